@@ -0,0 +1,80 @@
+package com.techouse.exchangerates;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Answers "the latest rate of a currency on or before a day" by binary search over a sorted array of
+ * the days the currency was quoted on, built once per {@link RateMatrix}.
+ */
+class AsOfRateIndex
+{
+    private final RateMatrix matrix;
+    private final Map<String, RateSeries> series = new HashMap<>();
+
+    AsOfRateIndex(RateMatrix matrix)
+    {
+        this.matrix = matrix;
+
+        for (int column = 0; column < matrix.getCurrencyCount(); column++) {
+            int[] epochDays = new int[matrix.getDayCount()];
+            double[] values = new double[matrix.getDayCount()];
+            int size = 0;
+            for (int row = 0; row < matrix.getDayCount(); row++) {
+                double value = matrix.getRate(row, column);
+                if (!Double.isNaN(value)) {
+                    epochDays[size] = matrix.getEpochDay(row);
+                    values[size++] = value;
+                }
+            }
+            series.put(matrix.getCurrency(column), new RateSeries(epochDays, values).subSeries(0, size));
+        }
+    }
+
+    boolean isBuiltFrom(RateMatrix matrix)
+    {
+        return this.matrix == matrix;
+    }
+
+    /**
+     * Returns the rate on the given day, or with carryForward the last rate published before it when
+     * there was none that day, like over weekends and TARGET holidays. NaN when there is no such rate.
+     */
+    double getRate(String currency, long epochDay, boolean carryForward)
+    {
+        return lookup(series.get(currency), epochDay, carryForward);
+    }
+
+    /**
+     * Looks up the rate of currencies[i] on epochDays[i] into rates[i] for every i.
+     */
+    void getRates(String[] currencies, int[] epochDays, double[] rates, boolean carryForward)
+    {
+        if (currencies.length != epochDays.length || rates.length < currencies.length) {
+            throw new IllegalArgumentException("Every currency needs a day and a slot for its rate.");
+        }
+
+        String currency = null;
+        RateSeries rateSeries = null;
+        for (int i = 0; i < currencies.length; i++) {
+            // consecutive lookups of the same currency skip the map
+            if (!currencies[i].equals(currency)) {
+                currency = currencies[i];
+                rateSeries = series.get(currency);
+            }
+            rates[i] = lookup(rateSeries, epochDays[i], carryForward);
+        }
+    }
+
+    private static double lookup(RateSeries rateSeries, long epochDay, boolean carryForward)
+    {
+        if (rateSeries == null) {
+            return Double.NaN;
+        }
+        int index = rateSeries.lowerBound(epochDay + 1) - 1;
+        if (index < 0 || (!carryForward && rateSeries.getEpochDay(index) != epochDay)) {
+            return Double.NaN;
+        }
+        return rateSeries.getValue(index);
+    }
+}
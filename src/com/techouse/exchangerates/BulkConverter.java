@@ -0,0 +1,385 @@
+package com.techouse.exchangerates;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless converter for CSV files of date,amount,from,to records, like 2016-03-01,1250.00,USD,GBP.
+ * Every record is copied to the output with the applied rate and the converted amount appended, or with
+ * both left empty when the record is malformed or there is no rate for one of its currencies. Days
+ * without a publication use the last rate published before them. A header line, recognised by not
+ * starting with a digit, is copied with the two column names appended. A leading byte order mark is
+ * dropped. Fields must not be quoted.
+ * <p>
+ * The file is read in chunks of records that are converted in parallel and written back in their
+ * original order. Only a few chunks per thread are in flight at any time, so files of any size are
+ * converted in constant memory.
+ */
+class BulkConverter
+{
+    static final int DEFAULT_CHUNK_SIZE = Integer.getInteger("exchangerates.convert.chunkSize", 16_384);
+    private static final int RATE_DECIMALS = FixedPoint.SCALE;
+    private static final int AMOUNT_DECIMALS = 4;
+    private static final RoundingMode ROUNDING_MODE = RoundingMode.HALF_UP;
+    private static final char DELIMITER = ',';
+
+    private final int threads;
+    private final int chunkSize;
+
+    static class Summary
+    {
+        long records;
+        long unconverted;
+        long nanos;
+
+        double getRecordsPerSecond()
+        {
+            return nanos > 0 ? records * 1e9 / nanos : 0d;
+        }
+    }
+
+    BulkConverter()
+    {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    BulkConverter(int threads, int chunkSize)
+    {
+        if (threads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Threads and chunk size must be positive.");
+        }
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Runs the convert command line: convert INPUT OUTPUT [THREADS]. Returns the exit status.
+     */
+    static int run(String[] args)
+    {
+        if (args.length < 3 || args.length > 4) {
+            System.out.println("Usage: convert INPUT.csv OUTPUT.csv [THREADS]");
+            return 2;
+        }
+
+        BulkConverter converter;
+        try {
+            converter = args.length == 4
+                ? new BulkConverter(Integer.parseInt(args[3]), DEFAULT_CHUNK_SIZE)
+                : new BulkConverter();
+        } catch (IllegalArgumentException e) {
+            System.out.println("THREADS must be a positive number.");
+            return 2;
+        }
+
+        // sync and load the historic rates before the clock starts
+        RateMatrix rates = HistoricReferenceRates.awaitIngest();
+
+        try (
+            Reader reader = new InputStreamReader(new FileInputStream(args[1]), StandardCharsets.UTF_8);
+            Writer writer = new OutputStreamWriter(new FileOutputStream(args[2]), StandardCharsets.UTF_8)
+        ) {
+            Summary summary = converter.convert(reader, writer, rates);
+
+            StringBuilder report = new StringBuilder("Converted ");
+            report.append(summary.records);
+            report.append(" records in ");
+            report.append(String.format("%.1f", summary.nanos / 1e9));
+            report.append(" s (");
+            report.append(String.format("%.0f", summary.getRecordsPerSecond()));
+            report.append(" records/s), ");
+            report.append(summary.unconverted);
+            report.append(" without a rate.");
+            System.out.println(report.toString());
+
+            return 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    /**
+     * Converts every record of input into output with the given rates.
+     */
+    Summary convert(Reader input, Writer output, RateMatrix rates) throws IOException
+    {
+        Summary summary = new Summary();
+        long start = System.nanoTime();
+        AsOfRateIndex index = new AsOfRateIndex(rates);
+        BufferedReader reader = new BufferedReader(input, 1 << 16);
+        BufferedWriter writer = new BufferedWriter(output, 1 << 16);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<Chunk>> pending = new ArrayDeque<>();
+
+        try {
+            String line = reader.readLine();
+            // a byte order mark, as spreadsheet programs write one, is not part of the first field
+            if (line != null && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            if (line != null && !line.isEmpty() && !Character.isDigit(line.charAt(0))) {
+                writer.write(line);
+                writer.write(",rate,converted_amount");
+                writer.newLine();
+                line = reader.readLine();
+            }
+
+            while (line != null) {
+                String[] lines = new String[chunkSize];
+                int count = 0;
+                for (; line != null && count < chunkSize; line = reader.readLine()) {
+                    if (!line.isEmpty()) {
+                        lines[count++] = line;
+                    }
+                }
+
+                Chunk chunk = new Chunk(lines, count, index);
+                pending.addLast(executor.submit(() -> chunk.convert()));
+                // keep every thread busy while the oldest chunk is written, but no more than that
+                if (pending.size() > 2 * threads) {
+                    write(pending.removeFirst(), writer, summary);
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(pending.removeFirst(), writer, summary);
+            }
+            writer.flush();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        summary.nanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    private static void write(Future<Chunk> future, Writer writer, Summary summary) throws IOException
+    {
+        Chunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Conversion interrupted.");
+        } catch (ExecutionException e) {
+            throw new IOException("Conversion failed.", e.getCause());
+        }
+
+        writer.append(chunk.output);
+        summary.records += chunk.count;
+        summary.unconverted += chunk.unconverted;
+    }
+
+    private static class Chunk
+    {
+        private final String[] lines;
+        private final int count;
+        private final AsOfRateIndex index;
+        private StringBuilder output;
+        private int unconverted = 0;
+
+        Chunk(String[] lines, int count, AsOfRateIndex index)
+        {
+            this.lines = lines;
+            this.count = count;
+            this.index = index;
+        }
+
+        Chunk convert()
+        {
+            String[] fromCurrencies = new String[count];
+            String[] toCurrencies = new String[count];
+            int[] epochDays = new int[count];
+            // end of the date, amount and from fields, or null for a malformed record
+            int[][] fieldEnds = new int[count][];
+
+            for (int i = 0; i < count; i++) {
+                String line = lines[i];
+                int dateEnd = line.indexOf(DELIMITER);
+                int amountEnd = dateEnd < 0 ? -1 : line.indexOf(DELIMITER, dateEnd + 1);
+                int fromEnd = amountEnd < 0 ? -1 : line.indexOf(DELIMITER, amountEnd + 1);
+                int toEnd = fromEnd < 0 ? -1 : line.indexOf(DELIMITER, fromEnd + 1);
+                if (toEnd < 0) {
+                    toEnd = line.length();
+                }
+
+                epochDays[i] = Integer.MIN_VALUE;
+                if (fromEnd >= 0) {
+                    try {
+                        epochDays[i] = parseEpochDay(line, dateEnd);
+                        fieldEnds[i] = new int[]{dateEnd, amountEnd, fromEnd};
+                    } catch (DateTimeException | NumberFormatException ignored) {
+                    }
+                    fromCurrencies[i] = line.substring(amountEnd + 1, fromEnd).trim().toUpperCase();
+                    toCurrencies[i] = line.substring(fromEnd + 1, toEnd).trim().toUpperCase();
+                } else {
+                    fromCurrencies[i] = "";
+                    toCurrencies[i] = "";
+                }
+            }
+
+            double[] fromRates = new double[count];
+            double[] toRates = new double[count];
+            index.getRates(fromCurrencies, epochDays, fromRates, true);
+            index.getRates(toCurrencies, epochDays, toRates, true);
+
+            output = new StringBuilder(count * (lines[0] == null ? 16 : lines[0].length() + 24));
+            for (int i = 0; i < count; i++) {
+                output.append(lines[i]);
+                output.append(DELIMITER);
+                if (fieldEnds[i] == null
+                    || !convert(lines[i], fieldEnds[i], fromCurrencies[i], fromRates[i], toCurrencies[i], toRates[i], output)) {
+                    output.append(DELIMITER);
+                    unconverted++;
+                }
+                output.append(System.lineSeparator());
+            }
+
+            return this;
+        }
+
+        /**
+         * Appends the rate and the converted amount of a record, or nothing when it cannot be converted.
+         */
+        private static boolean convert(String line, int[] fieldEnds, String from, double fromRate, String to, double toRate, StringBuilder output)
+        {
+            long fixedFromRate = referenceRate(from, fromRate);
+            long fixedToRate = referenceRate(to, toRate);
+            if (fixedFromRate <= 0 || fixedToRate <= 0) {
+                return false;
+            }
+
+            String amount = line.substring(fieldEnds[0] + 1, fieldEnds[1]).trim();
+            long fixedConverted = 0;
+            String converted = null;
+            try {
+                fixedConverted = FixedPoint.multiplyDivide(parseFixed(amount), fixedToRate, fixedFromRate, AMOUNT_DECIMALS, ROUNDING_MODE);
+            } catch (ArithmeticException e) {
+                // amounts beyond the fixed-point range or with more than 6 decimals
+                try {
+                    converted = new BigDecimal(amount)
+                        .multiply(BigDecimal.valueOf(fixedToRate, FixedPoint.SCALE))
+                        .divide(BigDecimal.valueOf(fixedFromRate, FixedPoint.SCALE), AMOUNT_DECIMALS, ROUNDING_MODE)
+                        .toPlainString();
+                } catch (NumberFormatException malformed) {
+                    return false;
+                }
+            } catch (NumberFormatException e) {
+                return false;
+            }
+
+            appendFixed(output, FixedPoint.divide(fixedToRate, fixedFromRate, RATE_DECIMALS, ROUNDING_MODE), RATE_DECIMALS);
+            output.append(DELIMITER);
+            if (converted != null) {
+                output.append(converted);
+            } else {
+                appendFixed(output, fixedConverted, AMOUNT_DECIMALS);
+            }
+            return true;
+        }
+
+        private static long referenceRate(String currency, double rate)
+        {
+            if (currency.equals(ReferenceRates.REFERENCE_CURRENCY)) {
+                return FixedPoint.ONE;
+            }
+            return rate > 0 ? FixedPoint.valueOf(rate) : 0;
+        }
+    }
+
+    /**
+     * Parses an ISO yyyy-MM-dd date at the start of the line without going through a formatter.
+     */
+    private static int parseEpochDay(String line, int end)
+    {
+        if (end != 10 || line.charAt(4) != '-' || line.charAt(7) != '-') {
+            throw new NumberFormatException("Not an ISO date.");
+        }
+        return (int) LocalDate.of(digits(line, 0, 4), digits(line, 5, 7), digits(line, 8, 10)).toEpochDay();
+    }
+
+    private static int digits(String text, int start, int end)
+    {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Not a digit.");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parses a plain decimal straight into a fixed-point value. Throws an {@link ArithmeticException} when it
+     * does not fit, so the caller can fall back to {@link BigDecimal}.
+     */
+    private static long parseFixed(String text)
+    {
+        int i = 0;
+        boolean negative = false;
+        if (!text.isEmpty() && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i++;
+        }
+
+        long value = 0;
+        int decimals = -1;
+        boolean anyDigit = false;
+        for (; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (decimals >= FixedPoint.SCALE) {
+                    throw new ArithmeticException("Too many decimals.");
+                }
+                value = Math.addExact(Math.multiplyExact(value, 10), c - '0');
+                anyDigit = true;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else {
+                throw new NumberFormatException("Not a decimal: " + text);
+            }
+        }
+        if (!anyDigit) {
+            throw new NumberFormatException("Not a decimal: " + text);
+        }
+
+        for (int scale = Math.max(decimals, 0); scale < FixedPoint.SCALE; scale++) {
+            value = Math.multiplyExact(value, 10);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Appends a fixed-point value that is already rounded to the given number of decimals.
+     */
+    private static void appendFixed(StringBuilder output, long value, int decimals)
+    {
+        if (value < 0) {
+            output.append('-');
+            value = -value;
+        }
+        output.append(value / FixedPoint.ONE);
+        if (decimals > 0) {
+            output.append('.');
+            long fraction = value % FixedPoint.ONE;
+            for (long digit = FixedPoint.ONE / 10; digit >= 1 && decimals-- > 0; digit /= 10) {
+                output.append((char) ('0' + fraction / digit % 10));
+            }
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.techouse.exchangerates;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Keeps physical connections open between uses and caches the statements prepared on each of them.
+ * Closing a borrowed connection hands it back to the pool and closing a cached statement only resets
+ * it, so callers keep using plain try-with-resources.
+ */
+class ConnectionPool implements DataSource
+{
+    static final int DEFAULT_MAX_IDLE = Integer.getInteger("exchangerates.db.poolSize", 4);
+    private static final int MAX_CACHED_STATEMENTS = 32;
+
+    private final DataSource dataSource;
+    private final int maxIdle;
+    private final Deque<PhysicalConnection> idle = new ArrayDeque<>();
+
+    ConnectionPool(DataSource dataSource)
+    {
+        this(dataSource, DEFAULT_MAX_IDLE);
+    }
+
+    ConnectionPool(DataSource dataSource, int maxIdle)
+    {
+        this.dataSource = dataSource;
+        this.maxIdle = maxIdle;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException
+    {
+        PhysicalConnection physical;
+        synchronized (idle) {
+            physical = idle.pollFirst();
+        }
+        if (physical == null || physical.connection.isClosed()) {
+            physical = new PhysicalConnection(dataSource.getConnection());
+        }
+        return (Connection) Proxy.newProxyInstance(
+            ConnectionPool.class.getClassLoader(),
+            new Class<?>[]{Connection.class},
+            new BorrowedConnection(physical)
+        );
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("The pool only hands out connections of its own user.");
+    }
+
+    private void release(PhysicalConnection physical)
+    {
+        try {
+            if (!physical.connection.isClosed()) {
+                if (!physical.connection.getAutoCommit()) {
+                    physical.connection.rollback();
+                    physical.connection.setAutoCommit(true);
+                }
+                synchronized (idle) {
+                    if (idle.size() < maxIdle) {
+                        idle.addFirst(physical);
+                        return;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        physical.close();
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable
+    {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static class PhysicalConnection
+    {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+            {
+                if (size() > MAX_CACHED_STATEMENTS) {
+                    // a statement still checked out is closed when it is handed back
+                    if (!statementsInUse.contains(eldest.getKey())) {
+                        try {
+                            eldest.getValue().close();
+                        } catch (SQLException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    return true;
+                }
+                return false;
+            }
+        };
+        private final Set<String> statementsInUse = new HashSet<>();
+
+        private PhysicalConnection(Connection connection)
+        {
+            this.connection = connection;
+        }
+
+        private void close()
+        {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private class BorrowedConnection implements InvocationHandler
+    {
+        private final PhysicalConnection physical;
+        private boolean closed = false;
+
+        private BorrowedConnection(PhysicalConnection physical)
+        {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(physical);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || physical.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + physical.connection;
+            }
+
+            if (closed) {
+                throw new SQLException("Connection has been returned to the pool.");
+            }
+            if (method.getName().equals("prepareStatement") && args.length == 1) {
+                return prepareStatement((String) args[0]);
+            }
+            return ConnectionPool.invoke(physical.connection, method, args);
+        }
+
+        private PreparedStatement prepareStatement(String sql) throws SQLException
+        {
+            // the same SQL prepared twice at once gets a statement of its own
+            if (!physical.statementsInUse.add(sql)) {
+                return physical.connection.prepareStatement(sql);
+            }
+
+            PreparedStatement statement = physical.statements.get(sql);
+            if (statement == null || statement.isClosed()) {
+                try {
+                    statement = physical.connection.prepareStatement(sql);
+                } catch (SQLException e) {
+                    physical.statementsInUse.remove(sql);
+                    throw e;
+                }
+                physical.statements.put(sql, statement);
+            }
+
+            return (PreparedStatement) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new CachedStatement(physical, sql, statement)
+            );
+        }
+    }
+
+    private static class CachedStatement implements InvocationHandler
+    {
+        private final PhysicalConnection physical;
+        private final String sql;
+        private final PreparedStatement statement;
+        private boolean closed = false;
+
+        private CachedStatement(PhysicalConnection physical, String sql, PreparedStatement statement)
+        {
+            this.physical = physical;
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        physical.statementsInUse.remove(sql);
+                        if (physical.statements.containsKey(sql)) {
+                            statement.clearParameters();
+                            statement.clearBatch();
+                        } else {
+                            // evicted from the cache while it was checked out
+                            statement.close();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached " + statement;
+            }
+
+            if (closed) {
+                throw new SQLException("Statement has been closed.");
+            }
+            return ConnectionPool.invoke(statement, method, args);
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException
+    {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException
+    {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException
+    {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException
+    {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException
+    {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException
+    {
+        return iface.isInstance(this) ? iface.cast(this) : dataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException
+    {
+        return iface.isInstance(this) || dataSource.isWrapperFor(iface);
+    }
+}
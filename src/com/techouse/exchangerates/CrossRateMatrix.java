@@ -0,0 +1,109 @@
+package com.techouse.exchangerates;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * Every base/quote cross rate of one set of reference rates, computed once into a flat array.
+ */
+class CrossRateMatrix
+{
+    private final RateSnapshot snapshot;
+    private final double[] rates;
+
+    CrossRateMatrix(RateSnapshot snapshot)
+    {
+        this.snapshot = snapshot;
+
+        int n = snapshot.getCurrencyCount();
+        this.rates = new double[n * n];
+
+        for (int base = 0; base < n; base++) {
+            calculateRow(snapshot, base, rates, base * n);
+        }
+    }
+
+    /**
+     * Returns the cross rates of one base without building the whole matrix, for snapshots that are
+     * asked for a single base only, such as a historic day.
+     */
+    static Map<String, Double> calculateRates(RateSnapshot snapshot, String baseCurrency)
+    {
+        int base = snapshot.indexOf(baseCurrency);
+        if (base < 0) {
+            return new HashMap<>();
+        }
+
+        double[] row = new double[snapshot.getCurrencyCount()];
+        calculateRow(snapshot, base, row, 0);
+        return toMap(snapshot, row, 0);
+    }
+
+    private static void calculateRow(RateSnapshot snapshot, int base, double[] rates, int offset)
+    {
+        long baseRate = FixedPoint.valueOf(snapshot.getRate(base));
+
+        for (int quote = 0; quote < snapshot.getCurrencyCount(); quote++) {
+            double quoteRate = snapshot.getRate(quote);
+
+            if (snapshot.getCurrency(base).equals(ReferenceRates.REFERENCE_CURRENCY)) {
+                rates[offset + quote] = quoteRate;
+                continue;
+            }
+
+            long calculatedRate = FixedPoint.divide(FixedPoint.valueOf(quoteRate), baseRate, 4, RoundingMode.HALF_UP);
+            if (calculatedRate >= 100 * FixedPoint.ONE) {
+                calculatedRate = roundToCents(calculatedRate);
+            }
+
+            rates[offset + quote] = FixedPoint.toDouble(calculatedRate);
+        }
+    }
+
+    /**
+     * Rounds a rate to 2 decimals HALF_UP the way the DecimalFormat these rates used to be formatted with
+     * did: it rounds the double, so an exact half cent is rounded down when its double lies below it.
+     */
+    private static long roundToCents(long rate)
+    {
+        long halfCent = FixedPoint.ONE / 200;
+        if (rate % (2 * halfCent) == halfCent
+            && new BigDecimal(FixedPoint.toDouble(rate)).compareTo(BigDecimal.valueOf(rate, FixedPoint.SCALE)) < 0) {
+            return FixedPoint.round(rate, 2, RoundingMode.DOWN);
+        }
+        return FixedPoint.round(rate, 2, RoundingMode.HALF_UP);
+    }
+
+    boolean isBuiltFrom(RateSnapshot snapshot)
+    {
+        return this.snapshot == snapshot;
+    }
+
+    /**
+     * Returns how many quote currency units one unit of the base currency buys, or NaN for unknown currencies.
+     */
+    double getRate(String baseCurrency, String quoteCurrency)
+    {
+        int base = snapshot.indexOf(baseCurrency);
+        int quote = snapshot.indexOf(quoteCurrency);
+        return base < 0 || quote < 0 ? Double.NaN : rates[base * snapshot.getCurrencyCount() + quote];
+    }
+
+    Map<String, Double> getRates(String baseCurrency)
+    {
+        int base = snapshot.indexOf(baseCurrency);
+        return base < 0 ? new HashMap<>() : toMap(snapshot, rates, base * snapshot.getCurrencyCount());
+    }
+
+    private static Map<String, Double> toMap(RateSnapshot snapshot, double[] rates, int offset)
+    {
+        Map<String, Double> calculatedRates = new HashMap<>();
+
+        for (int quote = 0; quote < snapshot.getCurrencyCount(); quote++) {
+            calculatedRates.put(snapshot.getCurrency(quote), rates[offset + quote]);
+        }
+
+        return calculatedRates;
+    }
+}
@@ -11,6 +11,8 @@ import java.nio.file.attribute.DosFileAttributes;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 class Database
 {
@@ -22,6 +24,8 @@ class Database
 
     private static Database instance = null;
     private DataSource dataSource = null;
+    private Path directory = null;
+    private static final Map<String, Boolean> existingTables = new ConcurrentHashMap<>();
 
     private Database()
     {
@@ -79,6 +83,7 @@ class Database
                     e.printStackTrace();
                 }
             }
+            this.directory = Paths.get(URLDecoder.decode(databaseDir.toString(), "UTF-8"));
             databaseDir = databaseDir.resolve(DB_NAME);
             databaseURL.append(URLDecoder.decode(databaseDir.toString(), "UTF-8"));
 
@@ -87,18 +92,29 @@ class Database
             jdbcDataSource.setUser(DB_USER);
             jdbcDataSource.setPassword(DB_PASS);
 
-            this.dataSource = jdbcDataSource;
+            this.dataSource = new ConnectionPool(jdbcDataSource);
         } catch (ClassNotFoundException | UnsupportedEncodingException e) {
             e.printStackTrace();
         }
     }
 
-    static DataSource getDataSource()
+    // the fetch threads, the ingest thread and the EDT all get here during startup
+    private static synchronized Database getInstance()
     {
         if (instance == null) {
             instance = new Database();
         }
-        return instance.dataSource;
+        return instance;
+    }
+
+    static DataSource getDataSource()
+    {
+        return getInstance().dataSource;
+    }
+
+    static Path getDirectory()
+    {
+        return getInstance().directory;
     }
 
     static Connection getConnection()
@@ -112,13 +128,32 @@ class Database
         return cnx;
     }
 
+    /**
+     * The answer is cached until {@link #schemaChanged()} is called, so only the first call per table
+     * reaches the database metadata.
+     */
     static boolean tableExists(Connection connection, String table)
     {
+        Boolean exists = existingTables.get(table.toUpperCase());
+        if (exists != null) {
+            return exists;
+        }
+
         try (ResultSet resultSet = connection.getMetaData().getTables(null, null, table.toUpperCase(), null)) {
-            return resultSet.next();
+            exists = resultSet.next();
+            existingTables.put(table.toUpperCase(), exists);
+            return exists;
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
     }
+
+    /**
+     * Must be called after every CREATE or DROP so that {@link #tableExists} looks again.
+     */
+    static void schemaChanged()
+    {
+        existingTables.clear();
+    }
 }
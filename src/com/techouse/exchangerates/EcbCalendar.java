@@ -0,0 +1,96 @@
+package com.techouse.exchangerates;
+
+import java.time.*;
+
+/**
+ * Publication calendar of the euro foreign exchange reference rates. The ECB publishes them at around
+ * 16:00 CET on every day the TARGET system is open, that is every weekday except New Year's Day, Good
+ * Friday, Easter Monday, 1 May, Christmas Day and 26 December.
+ */
+class EcbCalendar
+{
+    static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+    static final LocalTime PUBLICATION_TIME = LocalTime.of(16, 0);
+
+    static boolean isPublicationDay(LocalDate day)
+    {
+        if (day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY) {
+            return false;
+        }
+
+        MonthDay monthDay = MonthDay.from(day);
+        if (monthDay.equals(MonthDay.of(Month.JANUARY, 1))
+            || monthDay.equals(MonthDay.of(Month.MAY, 1))
+            || monthDay.equals(MonthDay.of(Month.DECEMBER, 25))
+            || monthDay.equals(MonthDay.of(Month.DECEMBER, 26))) {
+            return false;
+        }
+
+        LocalDate easter = easterSunday(day.getYear());
+        return !day.equals(easter.minusDays(2)) && !day.equals(easter.plusDays(1));
+    }
+
+    /**
+     * Returns the first publication day after the given day.
+     */
+    static LocalDate nextPublicationDay(LocalDate day)
+    {
+        LocalDate next = day.plusDays(1);
+        while (!isPublicationDay(next)) {
+            next = next.plusDays(1);
+        }
+        return next;
+    }
+
+    /**
+     * Returns the last publication day before the given day.
+     */
+    static LocalDate previousPublicationDay(LocalDate day)
+    {
+        LocalDate previous = day.minusDays(1);
+        while (!isPublicationDay(previous)) {
+            previous = previous.minusDays(1);
+        }
+        return previous;
+    }
+
+    static ZonedDateTime getPublicationTime(LocalDate day)
+    {
+        return ZonedDateTime.of(day, PUBLICATION_TIME, ZONE);
+    }
+
+    /**
+     * Returns the newest day whose rates are due at the given instant.
+     */
+    static LocalDate latestPublicationDay(Instant now)
+    {
+        ZonedDateTime time = now.atZone(ZONE);
+        LocalDate today = time.toLocalDate();
+        if (isPublicationDay(today) && !time.toLocalTime().isBefore(PUBLICATION_TIME)) {
+            return today;
+        }
+        return previousPublicationDay(today);
+    }
+
+    /**
+     * Returns Easter Sunday of the Gregorian calendar, computed with the anonymous Gregorian algorithm.
+     */
+    static LocalDate easterSunday(int year)
+    {
+        int a = year % 19;
+        int b = year / 100;
+        int c = year % 100;
+        int d = b / 4;
+        int e = b % 4;
+        int f = (b + 8) / 25;
+        int g = (b - f + 1) / 3;
+        int h = (19 * a + b - d - g + 15) % 30;
+        int i = c / 4;
+        int k = c % 4;
+        int l = (32 + 2 * e + 2 * i - h - k) % 7;
+        int m = (a + 11 * h + 22 * l) / 451;
+        int month = (h + l - 7 * m + 114) / 31;
+        int day = (h + l - 7 * m + 114) % 31 + 1;
+        return LocalDate.of(year, month, day);
+    }
+}
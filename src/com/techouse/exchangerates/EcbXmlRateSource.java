@@ -0,0 +1,31 @@
+package com.techouse.exchangerates;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+
+class EcbXmlRateSource implements RateSource
+{
+    static final String ECB_90_DAYS_XML_URL = "https://www.ecb.europa.eu/stats/eurofxref/eurofxref-hist-90d.xml";
+
+    private final String url;
+
+    EcbXmlRateSource(String url)
+    {
+        this.url = url;
+    }
+
+    @Override
+    public void read(RateHandler handler) throws IOException, SQLException
+    {
+        try (InputStream inputStream = GetDataFromUrl.getInputStream(url)) {
+            RateXmlReader.read(inputStream, handler);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return url;
+    }
+}
@@ -0,0 +1,114 @@
+package com.techouse.exchangerates;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+class EcbZipRateSource implements RateSource
+{
+    static final String ECB_HISTORIC_CSV_ZIP_URL = "https://www.ecb.europa.eu/stats/eurofxref/eurofxref-hist.zip";
+    private static final String CSV_FILENAME = "eurofxref-hist.csv";
+    private static final int QUEUE_CAPACITY = 256;
+
+    private final String url;
+
+    EcbZipRateSource(String url)
+    {
+        this.url = url;
+    }
+
+    /**
+     * Parses the CSV on a separate thread while the calling thread hands the rows to the handler.
+     * Parsed rows travel through a bounded queue and are recycled once handled, so memory use does not
+     * grow with the length of the history.
+     */
+    @Override
+    public void read(RateHandler handler) throws IOException, SQLException
+    {
+        try (
+            ZipInputStream zipInputStream = new ZipInputStream(GetDataFromUrl.getInputStream(url))
+        ) {
+            ZipEntry zipEntry;
+
+            while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+                if (zipEntry.getName().equals(CSV_FILENAME)) {
+                    RateCsvReader csvReader = new RateCsvReader(zipInputStream);
+                    String[] keys = csvReader.readHeader();
+                    pipe(csvReader, keys, handler);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void pipe(RateCsvReader csvReader, String[] keys, RateHandler handler) throws IOException, SQLException
+    {
+        // room for every row in circulation plus the end marker, so adding the marker never blocks
+        BlockingQueue<RateCsvReader.Row> parsedRows = new ArrayBlockingQueue<>(QUEUE_CAPACITY + 2);
+        BlockingQueue<RateCsvReader.Row> freeRows = new ArrayBlockingQueue<>(QUEUE_CAPACITY + 1);
+        for (int i = 0; i <= QUEUE_CAPACITY; i++) {
+            freeRows.add(new RateCsvReader.Row(keys.length));
+        }
+        RateCsvReader.Row endOfData = new RateCsvReader.Row(0);
+        Throwable[] parseError = new Throwable[1];
+
+        Thread parser = new Thread(() -> {
+            try {
+                while (true) {
+                    RateCsvReader.Row row = freeRows.take();
+                    if (!csvReader.readRow(row)) {
+                        break;
+                    }
+                    parsedRows.put(row);
+                }
+            } catch (InterruptedException e) {
+                // the reader has stopped taking rows
+            } catch (Throwable e) {
+                // also unchecked ones, such as the DateTimeException of an impossible date
+                parseError[0] = e;
+            } finally {
+                parsedRows.add(endOfData);
+            }
+        }, "ecb-history-parser");
+        parser.setDaemon(true);
+        parser.start();
+
+        try {
+            RateCsvReader.Row row;
+            while ((row = parsedRows.take()) != endOfData) {
+                handler.handle(row.date, ReferenceRates.REFERENCE_CURRENCY, 1d);
+                for (int i = 0; i < keys.length; i++) {
+                    handler.handle(row.date, keys[i], row.values[i]);
+                }
+                freeRows.put(row);
+            }
+            parser.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + url);
+        } finally {
+            parser.interrupt();
+        }
+
+        Throwable error = parseError[0];
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        if (error != null) {
+            throw new IOException("Could not parse " + url, error);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return url;
+    }
+}
@@ -12,10 +12,17 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
 import java.util.Locale;
 import java.util.SortedSet;
+import java.util.concurrent.ExecutionException;
+
+import static java.time.temporal.ChronoUnit.DAYS;
 
 public class ExchangeRateGUI
 {
@@ -24,33 +31,42 @@ public class ExchangeRateGUI
     private static final String EMAIL = "techouse@gmail.com";
     private static final String VERSION = "1.1.4";
     private static final String TITLE = "ECB Exchange Rates";
-    private static boolean preparingDatabase = false;
+    private static volatile boolean preparingDatabase = false;
     private static ExchangeRateGUI instance;
     private DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("d MMMM yyyy 'at' HH:mm:ss");
+    private DateTimeFormatter dayFormat = DateTimeFormatter.ofPattern("d MMMM yyyy");
     private JList<String> currenciesList;
     private JScrollPane currenciesListScroller;
     private JTable ratesTable;
+    private ExchangeRatesTable ratesModel;
     private JScrollPane tableScroller;
     private JPanel panel;
     private JLabel currentCurrency;
     private JFormattedTextField currentCurrencyValue;
     private JLabel databaseStatus;
+    private JLabel dataAge;
     private JMenuBar menuBar;
     private JMenuItem showChart;
     private boolean sortCurrencies = true;
     private boolean sortExchangeRates = false;
     private JFrame frame;
+    private RefreshScheduler refreshScheduler;
 
     private ExchangeRateGUI()
     {
         ExchangeRateGUI.instance = this;
 
-        SortedSet<String> currencies = ReferenceRates.getCurrencies();
+        // the historic data is synced while the daily rates below are still downloading
+        HistoricReferenceRates.startIngest();
+
+        // the window starts with the rates saved last time, the download below replaces them when it lands
+        SortedSet<String> currencies = ReferenceRates.getLocalSnapshot().getCurrencies();
         String[] currenciesArray = new String[currencies.size()];
         currenciesList.setListData(currencies.toArray(currenciesArray));
         currenciesList.setSelectedIndex(currencies.headSet(ReferenceRates.REFERENCE_CURRENCY).size());
 
-        ratesTable.setModel(new ExchangeRatesTable());
+        ratesModel = new ExchangeRatesTable();
+        ratesTable.setModel(ratesModel);
         tableScroller.setViewportView(ratesTable);
 
         currenciesListScroller.setViewportView(currenciesList);
@@ -58,15 +74,7 @@ public class ExchangeRateGUI
             if (!e.getValueIsAdjusting()) {
                 String selectedCurrency = currenciesList.getSelectedValue();
 
-                ExchangeRatesTable currentData = (ExchangeRatesTable) ratesTable.getModel();
-
-                ratesTable.setModel(new ExchangeRatesTable(
-                    selectedCurrency,
-                    false,
-                    currentData.sortColumn,
-                    currentData.sortDescending,
-                    currentData.multiplyFactor
-                ));
+                ratesModel.setCurrency(selectedCurrency);
 
                 currentCurrency.setText(selectedCurrency);
             }
@@ -79,28 +87,14 @@ public class ExchangeRateGUI
             {
                 int col = ratesTable.columnAtPoint(e.getPoint());
 
-                ExchangeRatesTable currentData = (ExchangeRatesTable) ratesTable.getModel();
-
                 switch (col) {
                     case 0:
-                        ratesTable.setModel(new ExchangeRatesTable(
-                            currenciesList.getSelectedValue(),
-                            false,
-                            0,
-                            sortCurrencies,
-                            currentData.multiplyFactor
-                        ));
+                        ratesModel.setSort(0, sortCurrencies);
                         sortCurrencies = !sortCurrencies;
                         sortExchangeRates = false;
                         break;
                     case 1:
-                        ratesTable.setModel(new ExchangeRatesTable(
-                            currenciesList.getSelectedValue(),
-                            false,
-                            1,
-                            sortExchangeRates,
-                            currentData.multiplyFactor
-                        ));
+                        ratesModel.setSort(1, sortExchangeRates);
                         sortCurrencies = false;
                         sortExchangeRates = !sortExchangeRates;
                         break;
@@ -140,15 +134,53 @@ public class ExchangeRateGUI
         buildMenuBar();
 
         buildSimpleCurrencyCalculator();
+
+        refreshScheduler = new RefreshScheduler(
+            Clock.system(EcbCalendar.ZONE), HistoricReferenceRates::getLatestDay, HistoricReferenceRates::update
+        );
+        refreshScheduler.addListener(latestDay -> SwingUtilities.invokeLater(() -> {
+            showRates(ReferenceRates.getLocalSnapshot());
+
+            StringBuilder message = new StringBuilder("Rates of ");
+            message.append(latestDay.format(dayFormat));
+            message.append(" received.");
+            databaseStatus.setText(message.toString());
+        }));
+        refreshScheduler.start();
+
+        new RatesWorker(false).execute();
+
+        // the data only gets older, check once a minute whether newer rates are due
+        new Timer(60000, evt -> updateDataAge()).start();
+        updateDataAge();
     }
 
     public static void main(String[] args)
     {
-        if (!JAVA_VERSION.startsWith("1.8.")) {
+        // 1.7 and older report themselves as 1.x, Java 9 and newer without the 1. prefix
+        if (JAVA_VERSION.startsWith("1.") && !JAVA_VERSION.startsWith("1.8.")) {
             System.out.println("Java 8 required to run this app!\nPlease update your Java JRE to 8 or above.");
             System.exit(1);
         }
 
+        /*
+         * Headless bulk conversion of a CSV file, for batch jobs.
+         */
+        if (args.length > 0 && args[0].equals("convert")) {
+            System.exit(BulkConverter.run(args));
+        }
+
+        /*
+         * Headless JSON rate service.
+         */
+        if (args.length > 0 && args[0].equals("serve")) {
+            int status = RateServer.run(args);
+            if (status != 0) {
+                System.exit(status);
+            }
+            return;
+        }
+
         StringBuilder aboutText = new StringBuilder(TITLE);
         aboutText.append(' ');
         aboutText.append('v');
@@ -178,6 +210,11 @@ public class ExchangeRateGUI
             e.printStackTrace();
         }
 
+        /*
+         * Start downloading the daily rates before the GUI asks for them.
+         */
+        FetchClient.getDefault().fetch(ReferenceRates.ECB_DAILY_XML_URL);
+
         /*
          * Schedule a job for the event-dispatching thread:
          * creating and showing this application's GUI.
@@ -194,15 +231,22 @@ public class ExchangeRateGUI
     {
         ExchangeRateGUI.preparingDatabase = preparingDatabase;
 
-        if (preparingDatabase) {
-            instance.databaseStatus.setText("Preparing database. Please wait ...");
-            instance.showChart.setEnabled(false);
-        } else {
-            instance.databaseStatus.setText("Database ready.");
-            instance.showChart.setEnabled(true);
-
-            new Timer(5000, evt -> instance.databaseStatus.setText("")).start();
+        // there is no window to update when running headless
+        if (instance == null) {
+            return;
         }
+
+        SwingUtilities.invokeLater(() -> {
+            if (preparingDatabase) {
+                instance.databaseStatus.setText("Preparing database. Please wait ...");
+                instance.showChart.setEnabled(false);
+            } else {
+                instance.databaseStatus.setText("Database ready.");
+                instance.showChart.setEnabled(true);
+
+                new Timer(5000, evt -> instance.databaseStatus.setText("")).start();
+            }
+        });
     }
 
     private void buildSimpleCurrencyCalculator()
@@ -222,15 +266,7 @@ public class ExchangeRateGUI
         currentCurrencyValue.addPropertyChangeListener("value", evt -> {
             Double value = evt.getNewValue() != null ? (Double) evt.getNewValue() : 1d;
 
-            ExchangeRatesTable currentData = (ExchangeRatesTable) ratesTable.getModel();
-
-            ratesTable.setModel(new ExchangeRatesTable(
-                currentData.currency,
-                currentData.refresh,
-                currentData.sortColumn,
-                currentData.sortDescending,
-                value
-            ));
+            ratesModel.setMultiplyFactor(value);
         });
 
         currentCurrency.setLabelFor(currentCurrencyValue);
@@ -240,20 +276,50 @@ public class ExchangeRateGUI
 
     private void refreshTableData()
     {
-        new DatabaseWorker().execute();
+        HistoricReferenceRates.startIngest();
+
+        new RatesWorker(true).execute();
+    }
+
+    /**
+     * Shows the rates of the snapshot, keeping the selected currency.
+     */
+    private void showRates(RateSnapshot snapshot)
+    {
+        SortedSet<String> currencies = snapshot.getCurrencies();
+        ListModel<String> listModel = currenciesList.getModel();
+        boolean listChanged = listModel.getSize() != currencies.size();
+        Iterator<String> iterator = currencies.iterator();
+        for (int i = 0; !listChanged && i < listModel.getSize(); i++) {
+            listChanged = !listModel.getElementAt(i).equals(iterator.next());
+        }
+        if (listChanged) {
+            String selectedCurrency = currenciesList.getSelectedValue();
+            currenciesList.setListData(currencies.toArray(new String[currencies.size()]));
+            currenciesList.setSelectedValue(selectedCurrency, true);
+        }
 
-        ExchangeRatesTable currentData = (ExchangeRatesTable) ratesTable.getModel();
+        ratesModel.reload();
+        updateDataAge();
+    }
 
-        ratesTable.setModel(new ExchangeRatesTable(
-            currentData.currency,
-            true,
-            currentData.sortColumn,
-            currentData.sortDescending,
-            currentData.multiplyFactor
-        ));
-        StringBuilder message = new StringBuilder("Data updated on ");
-        message.append(LocalDateTime.now().format(dateFormat));
-        JOptionPane.showMessageDialog(null, message.toString());
+    private void updateDataAge()
+    {
+        LocalDate date = ReferenceRates.getLocalSnapshot().getDate();
+        if (date == null) {
+            dataAge.setText("No rates downloaded yet");
+            return;
+        }
+
+        StringBuilder text = new StringBuilder("Rates of ");
+        text.append(date.format(dayFormat));
+        if (date.isBefore(EcbCalendar.latestPublicationDay(Instant.now()))) {
+            long days = DAYS.between(date, LocalDate.now(EcbCalendar.ZONE));
+            text.append(" (");
+            text.append(days);
+            text.append(days == 1 ? " day old)" : " days old)");
+        }
+        dataAge.setText(text.toString());
     }
 
     private void buildMenuBar()
@@ -309,12 +375,15 @@ public class ExchangeRateGUI
         helpMenu.add(dataSource);
 
         menuBar.add(helpMenu);
+
+        dataAge = new JLabel();
+        dataAge.setBorder(BorderFactory.createEmptyBorder(0, 0, 0, 8));
+        menuBar.add(Box.createHorizontalGlue());
+        menuBar.add(dataAge);
     }
 
     private void createAndShowGUI()
     {
-        new DatabaseWorker().execute();
-
         frame = new JFrame(TITLE);
         frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
         frame.setContentPane(panel);
@@ -376,13 +445,36 @@ public class ExchangeRateGUI
         }
     }
 
-    private class DatabaseWorker extends SwingWorker
+    private class RatesWorker extends SwingWorker<RateSnapshot, Void>
     {
+        private final boolean announce;
+
+        RatesWorker(boolean announce)
+        {
+            this.announce = announce;
+        }
+
         @Override
-        protected Integer doInBackground() throws Exception
+        protected RateSnapshot doInBackground() throws Exception
         {
-            HistoricReferenceRates.prepareDatabase();
-            return 1;
+            return ReferenceRates.getSnapshot(true);
+        }
+
+        @Override
+        protected void done()
+        {
+            try {
+                showRates(get());
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            if (announce) {
+                StringBuilder message = new StringBuilder("Data updated on ");
+                message.append(LocalDateTime.now().format(dateFormat));
+                JOptionPane.showMessageDialog(null, message.toString());
+            }
         }
     }
 }
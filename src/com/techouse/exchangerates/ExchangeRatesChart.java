@@ -1,5 +1,6 @@
 package com.techouse.exchangerates;
 
+import com.techouse.exchangerates.RollingIndicators.Indicator;
 import org.jfree.chart.*;
 import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.labels.StandardXYToolTipGenerator;
@@ -7,11 +8,6 @@ import org.jfree.chart.panel.CrosshairOverlay;
 import org.jfree.chart.plot.Crosshair;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
-import org.jfree.data.general.DatasetUtilities;
-import org.jfree.data.time.Day;
-import org.jfree.data.time.MovingAverage;
-import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
 import org.jfree.data.xy.XYDataset;
 import org.jfree.ui.RectangleEdge;
 
@@ -19,6 +15,8 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Rectangle2D;
 import java.text.DecimalFormat;
@@ -27,17 +25,25 @@ import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.util.Date;
 import java.util.Locale;
-import java.util.Map;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
 
 class ExchangeRatesChart extends JDialog
 {
     private static final String TITLE = "Exchange Rates Chart";
     private static final String X_AXIS_LABEL = "Date";
     private static final SimpleDateFormat dateFormatter = new SimpleDateFormat("d-MMM-yyyy");
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
     private static final DecimalFormat decimalFormatter = (DecimalFormat) NumberFormat.getNumberInstance(Locale.US);
     private StringBuilder title;
     private JPanel chartPanel;
 
+    static {
+        // the datasets place every day at UTC midnight
+        dateFormatter.setTimeZone(UTC);
+    }
+
     ExchangeRatesChart(String currency)
     {
         this(currency, ReferenceRates.REFERENCE_CURRENCY);
@@ -47,6 +53,14 @@ class ExchangeRatesChart extends JDialog
     {
         this.chartPanel = new ExchangeRatesPanel(currency, baseCurrency);
         add(this.chartPanel, BorderLayout.CENTER);
+        addWindowListener(new WindowAdapter()
+        {
+            @Override
+            public void windowActivated(WindowEvent e)
+            {
+                ((ExchangeRatesPanel) chartPanel).appendNewDays();
+            }
+        });
 
         setSize(1024, 600);
         setDefaultCloseOperation(WindowConstants.HIDE_ON_CLOSE);
@@ -68,6 +82,20 @@ class ExchangeRatesChart extends JDialog
         private JPanel controlPanel;
         private Crosshair xCrosshair, yCrosshair;
         private String currency, baseCurrency;
+        // the histories of both currencies against the euro, every shown pair is derived from them
+        private RateSeries currencyRates, baseRates;
+        private String ratesKey;
+        private RollingIndicators indicators;
+        private volatile int indicatorDays = 30;
+        private volatile RatePyramid ratesPyramid;
+        private volatile RatePyramid[] indicatorPyramids;
+        private JCheckBox averageBox, emaBox, bollingerBox, minMaxBox;
+        private final Date labelDate = new Date();
+        private int mouseX;
+        private boolean crosshairUpdatePending = false;
+        private LocalDate detailFrom, detailTo;
+        private int detailVersion = 0;
+        private volatile int indicatorVersion = 0;
 
         ExchangeRatesPanel(String currency, String baseCurrency)
         {
@@ -78,6 +106,7 @@ class ExchangeRatesChart extends JDialog
             this.chart = createChart(this.currency, this.baseCurrency);
 
             this.plot = this.chart.getXYPlot();
+            ((DateAxis) this.plot.getDomainAxis()).setTimeZone(UTC);
 
             this.renderer = (XYLineAndShapeRenderer) this.plot.getRenderer();
             this.renderer.setAutoPopulateSeriesStroke(false);
@@ -93,6 +122,9 @@ class ExchangeRatesChart extends JDialog
             zigzag.lineTo(3.0f, -6.0f);
             zigzag.lineTo(6.0f, 0.0f);
             this.renderer.setLegendLine(zigzag);
+            for (int series = 1 + Indicator.EMA.ordinal(); series <= Indicator.values().length; series++) {
+                this.renderer.setSeriesVisible(series, false);
+            }
 
             ChartUtilities.applyCurrentTheme(this.chart);
 
@@ -111,6 +143,16 @@ class ExchangeRatesChart extends JDialog
                 new BasicStroke(0f)
             );
             this.yCrosshair.setLabelVisible(true);
+            this.xCrosshair.setLabelGenerator(crosshair -> {
+                this.labelDate.setTime((long) crosshair.getValue());
+                return dateFormatter.format(this.labelDate);
+            });
+            this.yCrosshair.setLabelGenerator(crosshair -> {
+                StringBuilder label = new StringBuilder(decimalFormatter.format(crosshair.getValue()));
+                label.append(" ");
+                label.append(this.currency.toUpperCase());
+                return label.toString();
+            });
             crosshairOverlay.addDomainCrosshair(xCrosshair);
             crosshairOverlay.addRangeCrosshair(yCrosshair);
             this.chartPanel.addOverlay(crosshairOverlay);
@@ -120,6 +162,7 @@ class ExchangeRatesChart extends JDialog
             this.plot.setRangeCrosshairVisible(true);
             this.plot.setDomainPannable(true);
             this.plot.setRangePannable(true);
+            this.plot.getDomainAxis().addChangeListener(event -> updateDetail(false));
 
             add(this.chartPanel);
 
@@ -135,11 +178,34 @@ class ExchangeRatesChart extends JDialog
             box1.setSelected(true);
             this.controlPanel.add(box1);
 
-            JCheckBox box2 = new JCheckBox("30 DAY AVG");
-            box2.setActionCommand("S2");
-            box2.addActionListener(this);
-            box2.setSelected(true);
-            this.controlPanel.add(box2);
+            this.averageBox = new JCheckBox();
+            this.averageBox.setActionCommand("SMA");
+            this.averageBox.addActionListener(this);
+            this.averageBox.setSelected(true);
+            this.controlPanel.add(this.averageBox);
+
+            this.emaBox = new JCheckBox();
+            this.emaBox.setActionCommand("EMA");
+            this.emaBox.addActionListener(this);
+            this.controlPanel.add(this.emaBox);
+
+            this.bollingerBox = new JCheckBox();
+            this.bollingerBox.setActionCommand("BOLLINGER");
+            this.bollingerBox.addActionListener(this);
+            this.controlPanel.add(this.bollingerBox);
+
+            this.minMaxBox = new JCheckBox();
+            this.minMaxBox.setActionCommand("MINMAX");
+            this.minMaxBox.addActionListener(this);
+            this.controlPanel.add(this.minMaxBox);
+
+            JSpinner daysSpinner = new JSpinner(new SpinnerNumberModel(this.indicatorDays, 2, 365, 1));
+            daysSpinner.addChangeListener(e -> new IndicatorWorker((Integer) daysSpinner.getValue(), ++this.indicatorVersion).execute());
+            JLabel daysLabel = new JLabel("DAYS");
+            daysLabel.setLabelFor(daysSpinner);
+            this.controlPanel.add(daysSpinner);
+            this.controlPanel.add(daysLabel);
+            updateIndicatorTitles();
 
             JButton invertButton = new JButton("INVERT", new ImageIcon(getClass().getResource("assets/images/invert.png")));
             invertButton.setActionCommand("INVERT");
@@ -167,27 +233,114 @@ class ExchangeRatesChart extends JDialog
             );
         }
 
-        private XYDataset createDataSet()
+        private XYDataset createDataSet(String currency, String baseCurrency)
         {
-            return createDataSet(this.currency, this.baseCurrency);
+            setRates(
+                currency,
+                HistoricReferenceRates.getCurrencySeries(currency, ReferenceRates.REFERENCE_CURRENCY),
+                baseCurrency,
+                HistoricReferenceRates.getCurrencySeries(baseCurrency, ReferenceRates.REFERENCE_CURRENCY),
+                indicatorDays
+            );
+
+            // more points than the screen has pixels would not show up in the chart anyway
+            return createDataSet(null, null, Toolkit.getDefaultToolkit().getScreenSize().width);
         }
 
-        private XYDataset createDataSet(String currency, String baseCurrency)
+        /**
+         * Returns the window between from and to, null for open, at the finest resolution that fits into maxPoints.
+         */
+        private XYDataset createDataSet(LocalDate from, LocalDate to, int maxPoints)
         {
-            Map<LocalDate, Double> rates = HistoricReferenceRates.getCurrencyHistory(currency, baseCurrency);
-            TimeSeriesCollection dataSet = new TimeSeriesCollection();
             StringBuilder timeSeriesTitle = new StringBuilder(currency.toUpperCase());
             timeSeriesTitle.append("/");
             timeSeriesTitle.append(baseCurrency.toUpperCase());
 
-            TimeSeries ratesSeries = new TimeSeries(timeSeriesTitle.toString());
-            for (LocalDate date : rates.keySet()) {
-                ratesSeries.add(new Day(DateUtils.asDate(date)), rates.get(date));
+            RatePyramid[] indicatorPyramids = this.indicatorPyramids;
+            String[] keys = new String[1 + indicatorPyramids.length];
+            RateSeries[] series = new RateSeries[1 + indicatorPyramids.length];
+            keys[0] = timeSeriesTitle.toString();
+            series[0] = ratesPyramid.getSeries(from, to, maxPoints);
+            for (Indicator indicator : Indicator.values()) {
+                keys[1 + indicator.ordinal()] = indicator.getTitle(indicatorDays);
+                series[1 + indicator.ordinal()] = indicatorPyramids[indicator.ordinal()].getSeries(from, to, maxPoints);
+            }
+
+            return new RateSeriesDataset(keys, series);
+        }
+
+        /**
+         * Shows the currency/base history with indicators over the given number of days. When the history
+         * only continues the one already shown, just its new days are fed to the indicators.
+         */
+        private synchronized boolean setRates(String currency, RateSeries currencyRates, String baseCurrency, RateSeries baseRates, int days)
+        {
+            String ratesKey = currency + "/" + baseCurrency;
+            RateSeries rates = baseCurrency.equals(ReferenceRates.REFERENCE_CURRENCY)
+                ? currencyRates
+                : RateSeries.cross(currencyRates, baseRates);
+
+            if (ratesKey.equals(this.ratesKey) && this.indicators != null && this.indicators.getDays() == days) {
+                if (rates.size() == 0 || rates.getEpochDay(rates.size() - 1) <= this.indicators.getLastEpochDay()) {
+                    return false;
+                }
+                this.indicators.addAll(rates);
+            } else {
+                this.indicators = new RollingIndicators(days, rates);
+            }
+            this.ratesKey = ratesKey;
+            this.currencyRates = currencyRates;
+            this.baseRates = baseRates;
+
+            RatePyramid[] indicatorPyramids = new RatePyramid[Indicator.values().length];
+            for (Indicator indicator : Indicator.values()) {
+                indicatorPyramids[indicator.ordinal()] = new RatePyramid(this.indicators.getSeries(indicator));
+            }
+            this.indicatorDays = days;
+            this.ratesPyramid = new RatePyramid(rates);
+            this.indicatorPyramids = indicatorPyramids;
+            return true;
+        }
+
+        /**
+         * Picks up days that were synced since the chart was opened.
+         */
+        void appendNewDays()
+        {
+            new AppendWorker(currency, baseCurrency).execute();
+        }
+
+        private void updateIndicatorTitles()
+        {
+            this.averageBox.setText(Indicator.SMA.getTitle(indicatorDays));
+            this.emaBox.setText(Indicator.EMA.getTitle(indicatorDays));
+            this.bollingerBox.setText("BOLLINGER");
+            StringBuilder minMax = new StringBuilder(Indicator.MIN.getTitle(indicatorDays));
+            minMax.append("/MAX");
+            this.minMaxBox.setText(minMax.toString());
+        }
+
+        /**
+         * Swaps in a dataset matching the visible window whenever the user zooms or pans. A fully zoomed out
+         * chart keeps the complete coarse dataset, so that auto range still finds the whole history.
+         */
+        private void updateDetail(boolean force)
+        {
+            DateAxis xAxis = (DateAxis) this.plot.getDomainAxis();
+            LocalDate from = null;
+            LocalDate to = null;
+            if (!xAxis.isAutoRange()) {
+                from = LocalDate.ofEpochDay(Math.floorDiv(xAxis.getMinimumDate().getTime(), RateSeriesDataset.MILLIS_PER_DAY));
+                to = LocalDate.ofEpochDay(Math.floorDiv(xAxis.getMaximumDate().getTime(), RateSeriesDataset.MILLIS_PER_DAY));
+            }
+            if (!force && Objects.equals(from, this.detailFrom) && Objects.equals(to, this.detailTo)) {
+                return;
             }
-            dataSet.addSeries(ratesSeries);
-            dataSet.addSeries(MovingAverage.createMovingAverage(ratesSeries, "30 DAY AVG", 30, 30));
+            this.detailFrom = from;
+            this.detailTo = to;
 
-            return dataSet;
+            int maxPoints = this.chartPanel.getWidth() > 0 ? this.chartPanel.getWidth() : Toolkit.getDefaultToolkit().getScreenSize().width;
+            new DetailWorker(from, to, maxPoints, ++this.detailVersion).execute();
         }
 
         @Override
@@ -199,51 +352,173 @@ class ExchangeRatesChart extends JDialog
         @Override
         public void chartMouseMoved(ChartMouseEvent event)
         {
+            // moves that arrive before the crosshairs were updated only replace the position
+            this.mouseX = event.getTrigger().getX();
+            if (!this.crosshairUpdatePending) {
+                this.crosshairUpdatePending = true;
+                SwingUtilities.invokeLater(this::updateCrosshairs);
+            }
+        }
+
+        /**
+         * Snaps the crosshairs to the point of the rate series closest to the mouse.
+         */
+        private void updateCrosshairs()
+        {
+            this.crosshairUpdatePending = false;
+
             Rectangle2D dataArea = this.chartPanel.getScreenDataArea();
             DateAxis xAxis = (DateAxis) this.plot.getDomainAxis();
-            double x = xAxis.java2DToValue(
-                event.getTrigger().getX(),
-                dataArea,
-                RectangleEdge.BOTTOM
-            );
+            double x = xAxis.java2DToValue(this.mouseX, dataArea, RectangleEdge.BOTTOM);
+            double y = Double.NaN;
+
             // make the crosshairs disappear if the mouse is out of range
-            if (!xAxis.getRange().contains(x)) {
+            if (xAxis.getRange().contains(x) && this.plot.getDataset() instanceof RateSeriesDataset) {
+                RateSeries rates = ((RateSeriesDataset) this.plot.getDataset()).getSeries(0);
+                int index = rates.nearestIndex(x / RateSeriesDataset.MILLIS_PER_DAY);
+                if (index >= 0) {
+                    x = rates.getEpochDay(index) * RateSeriesDataset.MILLIS_PER_DAY;
+                    y = rates.getValue(index);
+                } else {
+                    x = Double.NaN;
+                }
+            } else {
                 x = Double.NaN;
             }
-            double y = DatasetUtilities.findYValue(this.plot.getDataset(), 0, x);
+
             this.xCrosshair.setValue(x);
             this.yCrosshair.setValue(y);
-
-            this.yCrosshair.setLabelGenerator(arg0 -> {
-                StringBuilder label = new StringBuilder(decimalFormatter.format(arg0.getValue()));
-                label.append(" ");
-                label.append(this.currency.toUpperCase());
-                return label.toString();
-            });
-            this.xCrosshair.setLabelGenerator(arg0 -> dateFormatter.format(new Date((long) arg0.getValue())));
         }
 
         @Override
         public void actionPerformed(ActionEvent e)
         {
-            int series = -1;
+            int[] series = new int[0];
             if (e.getActionCommand().equals("S1")) {
-                series = 0;
-            } else if (e.getActionCommand().equals("S2")) {
-                series = 1;
+                series = new int[]{0};
+            } else if (e.getActionCommand().equals("SMA")) {
+                series = new int[]{1 + Indicator.SMA.ordinal()};
+            } else if (e.getActionCommand().equals("EMA")) {
+                series = new int[]{1 + Indicator.EMA.ordinal()};
+            } else if (e.getActionCommand().equals("BOLLINGER")) {
+                series = new int[]{1 + Indicator.BOLLINGER_UPPER.ordinal(), 1 + Indicator.BOLLINGER_LOWER.ordinal()};
+            } else if (e.getActionCommand().equals("MINMAX")) {
+                series = new int[]{1 + Indicator.MIN.ordinal(), 1 + Indicator.MAX.ordinal()};
             } else if (e.getActionCommand().equals("INVERT")) {
                 new InvertChart().execute();
             }
-            if (series >= 0) {
-                boolean visible = this.renderer.getItemVisible(series, 0);
-                this.renderer.setSeriesVisible(series, !visible);
-                if (series == 0) {
+            for (int index : series) {
+                boolean visible = this.renderer.getItemVisible(index, 0);
+                this.renderer.setSeriesVisible(index, !visible);
+                if (index == 0) {
                     this.xCrosshair.setVisible(!visible);
                     this.yCrosshair.setVisible(!visible);
                 }
             }
         }
 
+        private class DetailWorker extends SwingWorker<XYDataset, Void>
+        {
+            private final LocalDate from, to;
+            private final int maxPoints, version;
+
+            DetailWorker(LocalDate from, LocalDate to, int maxPoints, int version)
+            {
+                this.from = from;
+                this.to = to;
+                this.maxPoints = maxPoints;
+                this.version = version;
+            }
+
+            @Override
+            protected XYDataset doInBackground() throws Exception
+            {
+                return createDataSet(from, to, maxPoints);
+            }
+
+            @Override
+            protected void done()
+            {
+                // a newer window may have been requested while this one was being computed
+                if (version != detailVersion) {
+                    return;
+                }
+                try {
+                    plot.setDataset(0, get());
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        private class IndicatorWorker extends SwingWorker<Boolean, Void>
+        {
+            private final int days, version;
+
+            IndicatorWorker(int days, int version)
+            {
+                this.days = days;
+                this.version = version;
+            }
+
+            @Override
+            protected Boolean doInBackground() throws Exception
+            {
+                synchronized (ExchangeRatesPanel.this) {
+                    // the spinner moved on while this one waited, only the newest days count
+                    if (version != indicatorVersion) {
+                        return false;
+                    }
+                    return setRates(currency, currencyRates, baseCurrency, baseRates, days);
+                }
+            }
+
+            @Override
+            protected void done()
+            {
+                if (version != indicatorVersion) {
+                    return;
+                }
+                updateIndicatorTitles();
+                updateDetail(true);
+            }
+        }
+
+        private class AppendWorker extends SwingWorker<Boolean, Void>
+        {
+            private final String currency, baseCurrency;
+
+            AppendWorker(String currency, String baseCurrency)
+            {
+                this.currency = currency;
+                this.baseCurrency = baseCurrency;
+            }
+
+            @Override
+            protected Boolean doInBackground() throws Exception
+            {
+                return setRates(
+                    currency,
+                    HistoricReferenceRates.getCurrencySeries(currency, ReferenceRates.REFERENCE_CURRENCY),
+                    baseCurrency,
+                    HistoricReferenceRates.getCurrencySeries(baseCurrency, ReferenceRates.REFERENCE_CURRENCY),
+                    indicatorDays
+                );
+            }
+
+            @Override
+            protected void done()
+            {
+                try {
+                    if (get()) {
+                        updateDetail(true);
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
         private class InvertChart extends SwingWorker
         {
             @Override
@@ -253,9 +528,19 @@ class ExchangeRatesChart extends JDialog
 
                 String invertedCurrency = baseCurrency;
                 String invertedBaseCurrency = currency;
+
+                // both histories against the euro are already loaded, so the inverted pair is derived in memory
+                synchronized (ExchangeRatesPanel.this) {
+                    setRates(invertedCurrency, baseRates, invertedBaseCurrency, currencyRates, indicatorDays);
+                }
                 currency = invertedCurrency;
                 baseCurrency = invertedBaseCurrency;
-                plot.setDataset(0, createDataSet());
+
+                return 1;
+            }
+
+            protected void done()
+            {
                 plot.getRangeAxis().setLabel(currency);
 
                 StringBuilder title = new StringBuilder(TITLE);
@@ -265,13 +550,8 @@ class ExchangeRatesChart extends JDialog
                 title.append(baseCurrency);
 
                 ExchangeRatesChart.this.setTitle(title.toString());
-
-                return 1;
-            }
-
-            protected void done()
-            {
                 ExchangeRatesChart.this.setCursor(Cursor.getDefaultCursor());
+                updateDetail(true);
             }
         }
     }
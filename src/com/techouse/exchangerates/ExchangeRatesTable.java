@@ -1,106 +1,142 @@
 package com.techouse.exchangerates;
 
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.AbstractTableModel;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
-import java.util.stream.Collectors;
 
+/**
+ * Holds the rates of one base currency and applies the amount and the sort order on the fly,
+ * so the GUI keeps a single instance and only tells it what changed.
+ */
 class ExchangeRatesTable extends AbstractTableModel
 {
-    String currency;
-    boolean refresh;
-    int sortColumn;
-    boolean sortDescending;
-    Double multiplyFactor;
+    private static final int RATE_COLUMN = 1;
+
+    private String currency;
+    private int sortColumn = -1;
+    private boolean sortDescending = false;
+    private Double multiplyFactor = 1d;
+    private long fixedMultiplyFactor = FixedPoint.ONE;
     private DecimalFormat decimalFormat = (DecimalFormat) NumberFormat.getNumberInstance(Locale.US);
-    private Map<String, Double> exchangeRates;
-    private Map<String, Double> exchangeRatesDisplay;
-    private String[] keys;
+    private String[] currencies = new String[0];
+    private double[] rates = new double[0];
+    private int[] byRate = new int[0];
 
     ExchangeRatesTable()
     {
-        this(ReferenceRates.REFERENCE_CURRENCY, false, -1, false, 1d);
+        this(ReferenceRates.REFERENCE_CURRENCY);
     }
 
     ExchangeRatesTable(String currency)
     {
-        this(currency, false, -1, false, 1d);
+        decimalFormat.setMinimumFractionDigits(2);
+        decimalFormat.setMaximumFractionDigits(5);
+        decimalFormat.setRoundingMode(RoundingMode.HALF_UP);
+
+        this.currency = currency;
+        loadRates();
     }
 
-    ExchangeRatesTable(boolean refresh)
+    void setCurrency(String currency)
     {
-        this(ReferenceRates.REFERENCE_CURRENCY, refresh, -1, false, 1d);
+        if (currency != null && !currency.equals(this.currency)) {
+            this.currency = currency;
+            loadRates();
+            fireTableDataChanged();
+        }
     }
 
-    ExchangeRatesTable(String currency, boolean refresh)
+    void setSort(int sortColumn, boolean sortDescending)
     {
-        this(currency, refresh, -1, false, 1d);
+        if (sortColumn != this.sortColumn || sortDescending != this.sortDescending) {
+            this.sortColumn = sortColumn;
+            this.sortDescending = sortDescending;
+            fireTableDataChanged();
+        }
     }
 
-    ExchangeRatesTable(String currency, boolean refresh, int sortColumn)
+    /**
+     * Only the rate column changes with the amount, so only those cells are repainted.
+     */
+    void setMultiplyFactor(Double multiplyFactor)
     {
-        this(currency, refresh, sortColumn, false, 1d);
+        if (multiplyFactor == null) {
+            multiplyFactor = 1d;
+        }
+        if (!multiplyFactor.equals(this.multiplyFactor)) {
+            this.multiplyFactor = multiplyFactor;
+            try {
+                this.fixedMultiplyFactor = FixedPoint.valueOf(multiplyFactor);
+            } catch (ArithmeticException e) {
+                this.fixedMultiplyFactor = -1;
+            }
+            if (currencies.length > 0) {
+                fireTableChanged(new TableModelEvent(this, 0, currencies.length - 1, RATE_COLUMN));
+            }
+        }
     }
 
-    ExchangeRatesTable(String currency, boolean refresh, int sortColumn, boolean sortDescending)
+    /**
+     * Shows the current daily rates again. The rates are never downloaded here, so the table can be
+     * built on the event dispatch thread.
+     */
+    void reload()
     {
-        this(currency, refresh, sortColumn, sortDescending, 1d);
+        loadRates();
+        fireTableDataChanged();
     }
 
-    ExchangeRatesTable(String currency, boolean refresh, int sortColumn, boolean sortDescending, Double multiplyFactor)
+    private void loadRates()
     {
-        this.currency = currency;
-        this.refresh = refresh;
-        this.sortColumn = sortColumn;
-        this.sortDescending = sortDescending;
-        this.multiplyFactor = multiplyFactor;
-
-        decimalFormat.setMinimumFractionDigits(2);
-        decimalFormat.setMaximumFractionDigits(5);
-        decimalFormat.setRoundingMode(RoundingMode.HALF_UP);
-
-        this.exchangeRates = multiplyFactor == null || multiplyFactor == 1d
-            ? GetExchangeRate.calculateRates(currency, refresh)
-            : ExchangeRatesTable.multiplyBy(GetExchangeRate.calculateRates(currency, refresh), multiplyFactor);
-        this.exchangeRatesDisplay = this.exchangeRates
-            .entrySet()
-            .stream()
-            .collect(Collectors.toMap(
-                Map.Entry::getKey,
-                Map.Entry::getValue
-            ));
-        this.exchangeRatesDisplay.remove(currency);
-
-        if (sortColumn == 1) {
-            this.exchangeRatesDisplay = sortDescending ? DataUtils.sortByValueDesc(this.exchangeRatesDisplay) : DataUtils.sortByValueAsc(this.exchangeRatesDisplay);
+        RateSnapshot snapshot = ReferenceRates.getLocalSnapshot();
+        Map<String, Double> exchangeRates = new TreeMap<>(GetExchangeRate.calculateRates(snapshot, currency));
+        exchangeRates.remove(currency);
+
+        currencies = new String[exchangeRates.size()];
+        rates = new double[exchangeRates.size()];
+        int i = 0;
+        for (Map.Entry<String, Double> entry : exchangeRates.entrySet()) {
+            currencies[i] = entry.getKey();
+            rates[i] = entry.getValue();
+            i++;
         }
 
-        this.keys = this.exchangeRatesDisplay.keySet().toArray(new String[this.exchangeRatesDisplay.size()]);
-
-        if (sortColumn != 1) {
-            if (sortDescending) {
-                Arrays.sort(this.keys, Collections.reverseOrder());
-            } else {
-                Arrays.sort(this.keys);
+        // currencies are already in alphabetical order, a positive amount does not change the order of the rates;
+        // an insertion sort of the few dozen rows keeps equal rates in alphabetical order without boxing
+        byRate = new int[currencies.length];
+        for (i = 0; i < byRate.length; i++) {
+            int position = i;
+            for (; position > 0 && rates[byRate[position - 1]] > rates[i]; position--) {
+                byRate[position] = byRate[position - 1];
             }
+            byRate[position] = i;
         }
     }
 
-    private static Map<String, Double> multiplyBy(Map<String, Double> exchangeRates, Double factor)
+    private int indexOf(int rowIndex)
     {
-        Map<String, Double> newExchangeRates = new HashMap<>();
-        BigDecimal value;
-        BigDecimal multiply = new BigDecimal(factor.toString());
+        int position = sortDescending ? currencies.length - 1 - rowIndex : rowIndex;
+        return sortColumn == RATE_COLUMN ? byRate[position] : position;
+    }
 
-        for (String currency : exchangeRates.keySet()) {
-            value = new BigDecimal(exchangeRates.get(currency).toString()).multiply(multiply);
-            newExchangeRates.put(currency, value.setScale(4, RoundingMode.CEILING).doubleValue());
+    private double multiply(double rate)
+    {
+        if (multiplyFactor == 1d) {
+            return rate;
         }
-
-        return newExchangeRates;
+        if (fixedMultiplyFactor >= 0) {
+            try {
+                return FixedPoint.toDouble(FixedPoint.multiply(FixedPoint.valueOf(rate), fixedMultiplyFactor, 4, RoundingMode.CEILING));
+            } catch (ArithmeticException e) {
+                // amounts beyond the fixed-point range
+            }
+        }
+        BigDecimal value = new BigDecimal(Double.toString(rate)).multiply(new BigDecimal(multiplyFactor.toString()));
+        return value.setScale(4, RoundingMode.CEILING).doubleValue();
     }
 
     @Override
@@ -112,7 +148,7 @@ class ExchangeRatesTable extends AbstractTableModel
     @Override
     public int getRowCount()
     {
-        return exchangeRatesDisplay.size();
+        return currencies.length;
     }
 
     @Override
@@ -124,6 +160,7 @@ class ExchangeRatesTable extends AbstractTableModel
     @Override
     public Object getValueAt(int rowIndex, int columnIndex)
     {
-        return columnIndex == 0 ? keys[rowIndex] : decimalFormat.format(exchangeRatesDisplay.get(keys[rowIndex]));
+        int index = indexOf(rowIndex);
+        return columnIndex == 0 ? currencies[index] : decimalFormat.format(multiply(rates[index]));
     }
 }
@@ -0,0 +1,149 @@
+package com.techouse.exchangerates;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+
+/**
+ * Downloads ECB resources on a small pool of background threads. Every call returns a
+ * {@link CompletableFuture}, concurrent requests for the same url share one download, and failed
+ * attempts are retried with exponential backoff before falling back to the last cached copy, which
+ * the result then reports as stale.
+ */
+class FetchClient
+{
+    static final int DEFAULT_CONNECT_TIMEOUT = Integer.getInteger("exchangerates.http.connectTimeout", 10000);
+    static final int DEFAULT_READ_TIMEOUT = Integer.getInteger("exchangerates.http.readTimeout", 30000);
+    static final int DEFAULT_MAX_RETRIES = Integer.getInteger("exchangerates.http.maxRetries", 3);
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 8000;
+
+    private static FetchClient instance = null;
+
+    private final Path cacheDirectory;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxRetries;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentMap<String, Download> downloads = new ConcurrentHashMap<>();
+
+    private static class Download
+    {
+        final CompletableFuture<Result> future = new CompletableFuture<>();
+    }
+
+    /**
+     * The local copy of a url, and when the download failed and an older copy is served instead, why.
+     */
+    static class Result
+    {
+        private final Path path;
+        private final IOException failure;
+
+        Result(Path path, IOException failure)
+        {
+            this.path = path;
+            this.failure = failure;
+        }
+
+        Path getPath()
+        {
+            return path;
+        }
+
+        boolean isStale()
+        {
+            return failure != null;
+        }
+
+        IOException getFailure()
+        {
+            return failure;
+        }
+    }
+
+    FetchClient(Path cacheDirectory, int connectTimeout, int readTimeout, int maxRetries)
+    {
+        this.cacheDirectory = cacheDirectory;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxRetries = maxRetries;
+        this.executor = Executors.newScheduledThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "ecb-fetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static synchronized FetchClient getDefault()
+    {
+        if (instance == null) {
+            instance = new FetchClient(
+                GetDataFromUrl.getDefaultCacheDirectory(), DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, DEFAULT_MAX_RETRIES
+            );
+        }
+        return instance;
+    }
+
+    /**
+     * Joins the download of the url that is still running, or starts a new one. A finished download is
+     * never handed out again, so every call after it asks the server, at the cost of a 304 when nothing
+     * changed.
+     */
+    CompletableFuture<Result> fetch(String url)
+    {
+        return downloads.compute(url, (key, download) -> {
+            if (download != null && !download.future.isDone()) {
+                return download;
+            }
+            Download next = new Download();
+            executor.execute(() -> attempt(key, next, 0));
+            return next;
+        }).future;
+    }
+
+    /**
+     * Blocks until the url has been fetched and returns the local copy.
+     */
+    Result get(String url) throws IOException
+    {
+        try {
+            return fetch(url).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching " + url);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void attempt(String url, Download download, int retry)
+    {
+        try {
+            download.future.complete(new Result(GetDataFromUrl.fetch(new URL(url), cacheDirectory, connectTimeout, readTimeout), null));
+        } catch (IOException e) {
+            if (retry < maxRetries) {
+                long backoff = Math.min(INITIAL_BACKOFF_MILLIS << retry, MAX_BACKOFF_MILLIS);
+                backoff += ThreadLocalRandom.current().nextLong(backoff / 4 + 1);
+                executor.schedule(() -> attempt(url, download, retry + 1), backoff, TimeUnit.MILLISECONDS);
+            } else {
+                try {
+                    Path cached = GetDataFromUrl.getCachedCopy(new URL(url), cacheDirectory);
+                    if (cached != null) {
+                        download.future.complete(new Result(cached, e));
+                        return;
+                    }
+                } catch (IOException ignored) {
+                }
+                download.future.completeExceptionally(e);
+            }
+        } catch (RuntimeException e) {
+            download.future.completeExceptionally(e);
+        }
+    }
+}
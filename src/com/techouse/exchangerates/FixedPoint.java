@@ -0,0 +1,190 @@
+package com.techouse.exchangerates;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Exact decimal arithmetic on longs holding a value times 10^6, which covers every rate the ECB
+ * publishes and every amount the calculator accepts. Results are rounded to a requested number of
+ * decimals with an explicit {@link RoundingMode} applied to the exact quotient, exactly like
+ * {@link java.math.BigDecimal#setScale(int, RoundingMode)} would, but without allocating. Results that
+ * do not fit into a long throw an {@link ArithmeticException}.
+ */
+class FixedPoint
+{
+    static final int SCALE = 6;
+    static final long ONE = 1_000_000L;
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+        1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L
+    };
+    private static final double MAX_DOUBLE = Long.MAX_VALUE / (double) ONE;
+    // below this value * ONE lands within 0.2 of the scaled decimal
+    private static final double MAX_SCALED_DOUBLE = 1e9;
+    // longs up to 2^53 widen to a double without rounding
+    private static final long MAX_EXACT_LONG = 1L << 53;
+
+    /**
+     * Converts a double that was parsed from a decimal with at most 6 decimals back to that exact decimal.
+     */
+    static long valueOf(double value)
+    {
+        if (Double.isNaN(value) || Math.abs(value) >= MAX_DOUBLE) {
+            throw new ArithmeticException("Value out of fixed-point range: " + value);
+        }
+        if (Math.abs(value) < MAX_SCALED_DOUBLE) {
+            double scaled = value * ONE;
+            double rounded = Math.rint(scaled);
+            // away from a half the nearest integer is the rounded decimal, close to one only the decimal can tell
+            if (Math.abs(scaled - rounded) < 0.25) {
+                return (long) rounded;
+            }
+        }
+        return new BigDecimal(Double.toString(value)).setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Returns the double closest to the decimal value.
+     */
+    static double toDouble(long value)
+    {
+        if (Math.abs(value) <= MAX_EXACT_LONG) {
+            // both operands are exact, so the division rounds only once
+            return value / (double) ONE;
+        }
+        // the long would already be rounded when widened, and the division would round a second time
+        return BigDecimal.valueOf(value, SCALE).doubleValue();
+    }
+
+    /**
+     * Rounds the value to the given number of decimals.
+     */
+    static long round(long value, int decimals, RoundingMode roundingMode)
+    {
+        long unit = unit(decimals);
+        return Math.multiplyExact(mulDiv(value, 1, unit, roundingMode), unit);
+    }
+
+    /**
+     * Returns a * b rounded to the given number of decimals.
+     */
+    static long multiply(long a, long b, int decimals, RoundingMode roundingMode)
+    {
+        long unit = unit(decimals);
+        return Math.multiplyExact(mulDiv(a, b, POWERS_OF_TEN[2 * SCALE - decimals], roundingMode), unit);
+    }
+
+    /**
+     * Returns dividend / divisor rounded to the given number of decimals.
+     */
+    static long divide(long dividend, long divisor, int decimals, RoundingMode roundingMode)
+    {
+        long unit = unit(decimals);
+        if (divisor < 0) {
+            dividend = Math.negateExact(dividend);
+            divisor = -divisor;
+        }
+        return Math.multiplyExact(mulDiv(dividend, POWERS_OF_TEN[decimals], divisor, roundingMode), unit);
+    }
+
+    /**
+     * Returns a * b / divisor rounded to the given number of decimals, with a single rounding of the exact result.
+     */
+    static long multiplyDivide(long a, long b, long divisor, int decimals, RoundingMode roundingMode)
+    {
+        long unit = unit(decimals);
+        if (divisor < 0) {
+            a = Math.negateExact(a);
+            divisor = -divisor;
+        }
+        return Math.multiplyExact(mulDiv(a, b, Math.multiplyExact(divisor, unit), roundingMode), unit);
+    }
+
+    private static long unit(int decimals)
+    {
+        if (decimals < 0 || decimals > SCALE) {
+            throw new IllegalArgumentException("Decimals must be between 0 and " + SCALE);
+        }
+        return POWERS_OF_TEN[SCALE - decimals];
+    }
+
+    /**
+     * Returns a * b / divisor rounded to an integer, using a 128 bit intermediate product when needed.
+     */
+    private static long mulDiv(long a, long b, long divisor, RoundingMode roundingMode)
+    {
+        if (divisor <= 0) {
+            throw new ArithmeticException("Division by zero or negative divisor");
+        }
+        if (a == Long.MIN_VALUE || b == Long.MIN_VALUE) {
+            throw new ArithmeticException("Fixed-point overflow");
+        }
+
+        boolean negative = (a < 0) != (b < 0);
+        long x = Math.abs(a);
+        long y = Math.abs(b);
+        long quotient;
+        long remainder;
+
+        if (y == 0 || x <= Long.MAX_VALUE / y) {
+            long product = x * y;
+            quotient = product / divisor;
+            remainder = product % divisor;
+        } else {
+            // 128 bit product split into the unsigned halves high:low
+            long x1 = x >>> 32, x0 = x & 0xffffffffL;
+            long y1 = y >>> 32, y0 = y & 0xffffffffL;
+            long p00 = x0 * y0, p01 = x0 * y1, p10 = x1 * y0, p11 = x1 * y1;
+            long middle = (p00 >>> 32) + (p01 & 0xffffffffL) + (p10 & 0xffffffffL);
+            long low = (middle << 32) | (p00 & 0xffffffffL);
+            long high = p11 + (p01 >>> 32) + (p10 >>> 32) + (middle >>> 32);
+
+            if (Long.compareUnsigned(high, divisor) >= 0) {
+                throw new ArithmeticException("Fixed-point overflow");
+            }
+
+            // restoring division, the remainder always stays below the divisor
+            remainder = high;
+            quotient = 0;
+            for (int bit = 63; bit >= 0; bit--) {
+                remainder = (remainder << 1) | ((low >>> bit) & 1);
+                quotient <<= 1;
+                if (Long.compareUnsigned(remainder, divisor) >= 0) {
+                    remainder -= divisor;
+                    quotient |= 1;
+                }
+            }
+            if (quotient < 0) {
+                throw new ArithmeticException("Fixed-point overflow");
+            }
+        }
+
+        if (remainder != 0 && roundAwayFromZero(quotient, remainder, divisor, negative, roundingMode)) {
+            quotient = Math.addExact(quotient, 1);
+        }
+        return negative ? -quotient : quotient;
+    }
+
+    private static boolean roundAwayFromZero(long quotient, long remainder, long divisor, boolean negative, RoundingMode roundingMode)
+    {
+        long rest = divisor - remainder;
+        switch (roundingMode) {
+            case UP:
+                return true;
+            case DOWN:
+                return false;
+            case CEILING:
+                return !negative;
+            case FLOOR:
+                return negative;
+            case HALF_UP:
+                return remainder >= rest;
+            case HALF_DOWN:
+                return remainder > rest;
+            case HALF_EVEN:
+                return remainder > rest || (remainder == rest && (quotient & 1) == 1);
+            default:
+                throw new ArithmeticException("Rounding necessary");
+        }
+    }
+}
@@ -1,65 +1,141 @@
 package com.techouse.exchangerates;
 
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.MalformedURLException;
+import java.io.*;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPInputStream;
 
 class GetDataFromUrl
 {
-    public static String getStringData(String url)
+    private static final String CACHE_DIRECTORY = "http-cache";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "last-modified";
+    private static final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    static InputStream getInputStream(String url) throws IOException
     {
-        StringBuilder data = new StringBuilder();
+        URL dataUrl = new URL(url);
+        if (!dataUrl.getProtocol().startsWith("http")) {
+            return dataUrl.openStream();
+        }
+        FetchClient.Result result = FetchClient.getDefault().get(url);
+        if (result.isStale()) {
+            StringBuilder message = new StringBuilder("Download failed, reading the cached copy of ");
+            message.append(url);
+            System.err.println(message.toString());
+            result.getFailure().printStackTrace();
+        }
+        return Files.newInputStream(result.getPath());
+    }
 
-        try {
-            URL dataUrl = new URL(url);
-            try (
-                BufferedReader bufferedReader = new BufferedReader(
-                    new InputStreamReader(
-                        dataUrl.openStream()
-                    )
-                )
-            ) {
-                String line;
-                while ((line = bufferedReader.readLine()) != null) {
-                    data.append(line);
+    /**
+     * Returns the directory the downloads are cached in next to the database.
+     */
+    static Path getDefaultCacheDirectory()
+    {
+        return Database.getDirectory().resolve(CACHE_DIRECTORY);
+    }
+
+    /**
+     * Returns the local copy of the url in the cache directory, downloading it only when the server
+     * reports a change. The ETag and Last-Modified validators of the last response are kept next to the
+     * copy and sent back as If-None-Match and If-Modified-Since, so an unchanged resource costs a single 304.
+     */
+    static Path fetch(URL url, Path cacheDirectory, int connectTimeout, int readTimeout) throws IOException
+    {
+        String key = cacheKey(url.toString());
+        Path directory = Files.createDirectories(cacheDirectory);
+        Path body = directory.resolve(key + ".body");
+        Path meta = directory.resolve(key + ".properties");
+
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            Properties validators = new Properties();
+            if (Files.isRegularFile(body) && Files.isRegularFile(meta)) {
+                try (InputStream inputStream = Files.newInputStream(meta)) {
+                    validators.load(inputStream);
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
 
-        return data.toString();
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (validators.getProperty(ETAG) != null) {
+                connection.setRequestProperty("If-None-Match", validators.getProperty(ETAG));
+            }
+            if (validators.getProperty(LAST_MODIFIED) != null) {
+                connection.setRequestProperty("If-Modified-Since", validators.getProperty(LAST_MODIFIED));
+            }
+
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && Files.isRegularFile(body)) {
+                connection.disconnect();
+                return body;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                connection.disconnect();
+                throw new IOException("HTTP " + status + " for " + url);
+            }
+
+            store(connection, body, meta);
+            return body;
+        }
     }
 
-    static Document getDocument(String xmlUrl)
+    /**
+     * Returns the last downloaded copy of the url in the cache directory, or null when it has never been fetched.
+     */
+    static Path getCachedCopy(URL url, Path cacheDirectory)
     {
-        Document document = null;
-        DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
-        domFactory.setNamespaceAware(true);
+        Path body = cacheDirectory.resolve(cacheKey(url.toString()) + ".body");
+        return Files.isRegularFile(body) ? body : null;
+    }
 
+    private static void store(URLConnection connection, Path body, Path meta) throws IOException
+    {
+        Path temporary = Files.createTempFile(body.getParent(), body.getFileName().toString(), ".tmp");
         try {
-            URL url = new URL(xmlUrl);
-            try (
-                InputStream inputStream = url.openStream()
+            try (InputStream inputStream = "gzip".equalsIgnoreCase(connection.getContentEncoding())
+                ? new GZIPInputStream(connection.getInputStream())
+                : connection.getInputStream()
             ) {
-                DocumentBuilder builder = domFactory.newDocumentBuilder();
-                document = builder.parse(inputStream);
-            } catch (IOException | ParserConfigurationException | SAXException e) {
-                e.printStackTrace();
+                Files.copy(inputStream, temporary, StandardCopyOption.REPLACE_EXISTING);
             }
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
+            Files.move(temporary, body, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
         }
 
-        return document;
+        Properties validators = new Properties();
+        if (connection.getHeaderField("ETag") != null) {
+            validators.setProperty(ETAG, connection.getHeaderField("ETag"));
+        }
+        if (connection.getHeaderField("Last-Modified") != null) {
+            validators.setProperty(LAST_MODIFIED, connection.getHeaderField("Last-Modified"));
+        }
+        try (OutputStream outputStream = Files.newOutputStream(meta)) {
+            validators.store(outputStream, connection.getURL().toString());
+        }
+    }
+
+    private static String cacheKey(String url)
+    {
+        try {
+            StringBuilder key = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8))) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -1,289 +1,319 @@
 package com.techouse.exchangerates;
 
-import javax.sql.DataSource;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.nio.file.Path;
 import java.sql.*;
-import java.sql.Date;
-import java.time.DayOfWeek;
+import java.time.Clock;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
-
-import static java.time.temporal.ChronoUnit.DAYS;
-
+import java.util.concurrent.*;
+
+/**
+ * Historic reference rates, held in memory as a {@link RateMatrix}. The read methods only ever look at
+ * the matrix in memory and never touch the database or the network; before the first ingest has loaded
+ * it they see an empty matrix. The ingest loads the matrix and syncs the database with the ECB on a
+ * background thread. It is started explicitly with {@link #startIngest()}, runs at most once at a time
+ * and can be cancelled.
+ */
 class HistoricReferenceRates
 {
-    private static final String ECB_HISTORIC_CSV_ZIP_URL = "https://www.ecb.europa.eu/stats/eurofxref/eurofxref-hist.zip";
-    private static final String CSV_FILENAME = "eurofxref-hist.csv";
-    private static final String CSV_DELIMITER = ",";
-    private static final String TABLE_NAME = "EURO_EXCHANGE_RATES";
-    private static final DataSource datasource = Database.getDataSource();
-    private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-    private static HistoricReferenceRates instance = new HistoricReferenceRates();
+    static final String TABLE_NAME = "EURO_EXCHANGE_RATES";
+    private static final String MAX_DATE_SQL = "SELECT MAX(date) AS max_date FROM " + TABLE_NAME;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+    private static Clock clock = Clock.system(EcbCalendar.ZONE);
+    private static RateSyncPlanner syncPlanner = new RateSyncPlanner();
+    private static volatile RateMatrix matrix;
+    private static volatile AsOfRateIndex asOfIndex;
+    private static ExecutorService ingestExecutor;
+    private static Future<RateMatrix> ingest;
+    private static volatile boolean ingestCancelled = false;
 
     private HistoricReferenceRates()
     {
-        HistoricReferenceRates.prepareDatabase();
     }
 
-    static void prepareDatabase()
+    /**
+     * Starts an ingest unless one is already running and returns the running one, so concurrent callers
+     * all wait on the same future. The future yields the matrix in memory once the database is in sync.
+     */
+    static synchronized Future<RateMatrix> startIngest()
     {
-        if (dataTableEmpty() || dataNeedsUpdate()) {
-            storeData(getDataFromECB());
+        if (ingest == null || ingest.isDone()) {
+            if (ingestExecutor == null) {
+                ingestExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "ecb-ingest");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                Runtime.getRuntime().addShutdownHook(new Thread(HistoricReferenceRates::shutdownIngest));
+            }
+            ingest = ingestExecutor.submit(HistoricReferenceRates::runIngest);
         }
+        return ingest;
     }
 
-    private static Map<LocalDate, Map<String, Double>> getDataFromECB()
+    /**
+     * Starts an ingest if needed and waits for it, for callers that have nothing to do without the history.
+     * Returns the matrix in memory, which may be out of date when the ingest failed.
+     */
+    static RateMatrix awaitIngest()
     {
-        Map<LocalDate, Map<String, Double>> historicReferenceRates = new LinkedHashMap<>();
-
         try {
-            URL zipUrl = new URL(ECB_HISTORIC_CSV_ZIP_URL);
-            try (
-                ZipInputStream zipInputStream = new ZipInputStream(zipUrl.openStream())
-            ) {
-                ZipEntry zipEntry;
-
-                while ((zipEntry = zipInputStream.getNextEntry()) != null) {
-                    if (zipEntry.getName().equals(CSV_FILENAME)) {
-                        try (
-                            BufferedReader bufferedReader = new BufferedReader(
-                                new InputStreamReader(zipInputStream)
-                            )
-                        ) {
-                            String line;
-                            String[] keys = null;
-                            String[] values;
-                            int index = 0;
-
-                            while ((line = bufferedReader.readLine()) != null) {
-                                if (index == 0) {
-                                    // populate the header and remove the Date column
-                                    keys = line.substring(line.indexOf(CSV_DELIMITER) + 1).split(CSV_DELIMITER);
-                                } else {
-                                    values = line.split(CSV_DELIMITER);
-                                    historicReferenceRates.put(
-                                        LocalDate.parse(values[0], dateTimeFormatter),
-                                        buildReferenceRates(keys, Arrays.copyOfRange(values, 1, values.length))
-                                    );
-                                }
-
-                                index++;
-                            }
-                        } catch (InputMismatchException | IOException e) {
-                            e.printStackTrace();
-                        }
-
-                        break;
-                    }
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        } catch (MalformedURLException e) {
+            return startIngest().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
             e.printStackTrace();
         }
+        return getRateMatrix();
+    }
 
-        return historicReferenceRates;
+    /**
+     * Cancels the running ingest. Its download stops at the next row and the rows it already stored are
+     * deleted again, so the next ingest starts from the same place. The database itself is never
+     * interrupted mid-write.
+     */
+    static synchronized void cancelIngest()
+    {
+        if (ingest != null && ingest.cancel(false)) {
+            ingestCancelled = true;
+        }
     }
 
-    private static Map<String, Double> buildReferenceRates(String[] keys, String[] values) throws InputMismatchException
+    /**
+     * Cancels the running ingest and gives it a moment to clean up before the JVM exits.
+     */
+    private static void shutdownIngest()
     {
-        if (keys.length != values.length) {
-            throw new InputMismatchException("Keys and values lengths do not match.");
+        ExecutorService executor;
+        synchronized (HistoricReferenceRates.class) {
+            cancelIngest();
+            executor = ingestExecutor;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        Map<String, Double> referenceRates = new HashMap<String, Double>()
-        {{
-            put(ReferenceRates.REFERENCE_CURRENCY, 1d);
-        }};
+    private static RateMatrix runIngest()
+    {
+        // tasks run one after another, so a cancel flag still set belongs to an ingest that has finished
+        ingestCancelled = false;
 
-        for (int i = 0; i < keys.length; i++) {
-            referenceRates.put(
-                keys[i],
-                DataUtils.isNumeric(values[i]) ? Double.parseDouble(values[i]) : 0d
-            );
+        try {
+            if (matrix == null) {
+                ExchangeRateGUI.setPreparingDatabase(true);
+                loadRateMatrix();
+            }
+            prepareDatabase();
+        } finally {
+            if (ExchangeRateGUI.isPreparingDatabase()) {
+                ExchangeRateGUI.setPreparingDatabase(false);
+            }
         }
 
-        return referenceRates;
+        return getRateMatrix();
     }
 
-    private static void storeData(Map<LocalDate, Map<String, Double>> historicReferenceRates)
+    private static void prepareDatabase()
     {
-        StringBuilder sql;
+        try (final Connection connection = Database.getDataSource().getConnection()) {
+            SchemaMigrations.migrate(connection);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
 
-        try (
-            final Connection connection = datasource.getConnection();
-            Statement statement = connection.createStatement()
-        ) {
+        LocalDate dueDay = EcbCalendar.latestPublicationDay(clock.instant());
+        LocalDate published = ReferenceRates.getLocalSnapshot().getDate();
+        if (published != null && published.isAfter(dueDay)) {
+            dueDay = published;
+        }
+
+        LocalDate maxDate = getMaxDate();
+        if (maxDate == null || maxDate.isBefore(dueDay)) {
             ExchangeRateGUI.setPreparingDatabase(true);
+            storeData(maxDate);
+        } else if (isSnapshotStale(maxDate)) {
+            reloadRateMatrix();
+        }
+    }
 
-            connection.setAutoCommit(false);
-
-            if (!Database.tableExists(connection, TABLE_NAME.toUpperCase())) {
-                sql = new StringBuilder("CREATE CACHED TABLE IF NOT EXISTS ");
-                sql.append(TABLE_NAME);
-                sql.append(" (");
-                sql.append("date DATE NOT NULL, ");
-                sql.append("currency CHAR(3) NOT NULL, ");
-                sql.append("value DOUBLE DEFAULT 0 NOT NULL, ");
-                sql.append("PRIMARY KEY (date, currency)");
-                sql.append(")");
-                statement.addBatch(sql.toString());
-
-                sql = new StringBuilder("CREATE INDEX currency ON ");
-                sql.append(TABLE_NAME);
-                sql.append(" (currency)");
-                statement.addBatch(sql.toString());
-
-                statement.executeBatch();
-                connection.commit();
-            }
+    private static boolean isSnapshotStale(LocalDate maxDate)
+    {
+        RateMatrix matrix = HistoricReferenceRates.matrix;
+        return matrix != null
+            && (matrix.getDayCount() == 0 || matrix.getEpochDay(matrix.getDayCount() - 1) != maxDate.toEpochDay());
+    }
 
-            sql = new StringBuilder("INSERT INTO ");
-            sql.append(TABLE_NAME);
-            sql.append(" (date, currency, value) VALUES (?, ?, ?)");
-
-            StringBuilder dupeCheckSql = new StringBuilder("SELECT 1 AS entry_exists FROM ");
-            dupeCheckSql.append(TABLE_NAME);
-            dupeCheckSql.append(" WHERE date = ? AND currency = ?");
-
-            try (
-                PreparedStatement preparedInsertStatement = connection.prepareStatement(sql.toString());
-                PreparedStatement preparedSelectStatement = connection.prepareStatement(dupeCheckSql.toString());
-            ) {
-                for (LocalDate date : historicReferenceRates.keySet()) {
-                    for (String currency : historicReferenceRates.get(date).keySet()) {
-                        preparedSelectStatement.setDate(1, Date.valueOf(date));
-                        preparedSelectStatement.setString(2, currency);
-                        try (ResultSet dupeCheckResult = preparedSelectStatement.executeQuery()) {
-                            if (!dupeCheckResult.isBeforeFirst()) {
-                                preparedInsertStatement.setDate(1, Date.valueOf(date));
-                                preparedInsertStatement.setString(2, currency);
-                                preparedInsertStatement.setDouble(3, historicReferenceRates.get(date).get(currency));
-                                preparedInsertStatement.executeUpdate();
-                            }
-                        }
+    static void setSyncPlanner(RateSyncPlanner syncPlanner)
+    {
+        HistoricReferenceRates.syncPlanner = syncPlanner;
+    }
+
+    static void setClock(Clock clock)
+    {
+        HistoricReferenceRates.clock = clock;
+    }
+
+    /**
+     * Refreshes the daily rates and ingests them when they are newer than the history in memory. Returns
+     * the newest day in memory afterwards.
+     */
+    static LocalDate update() throws InterruptedException, ExecutionException
+    {
+        LocalDate published = ReferenceRates.getSnapshot(true).getDate();
+        LocalDate latestDay = getLatestDay();
+
+        if (latestDay == null || (published != null && published.isAfter(latestDay))) {
+            startIngest().get();
+        }
+
+        return getLatestDay();
+    }
+
+    /**
+     * Returns the newest day of the in-memory rates, or null when there are none.
+     */
+    static LocalDate getLatestDay()
+    {
+        RateMatrix matrix = getRateMatrix();
+        return matrix.getDayCount() == 0 ? null : matrix.getDate(matrix.getDayCount() - 1);
+    }
+
+    private static void storeData(LocalDate maxDate)
+    {
+        storeData(maxDate, RateBatchWriter.DEFAULT_BATCH_SIZE, RateBatchWriter.DEFAULT_COMMIT_INTERVAL);
+    }
+
+    private static void storeData(LocalDate maxDate, int batchSize, int commitInterval)
+    {
+        long[] written = new long[1];
+
+        try (final Connection connection = Database.getDataSource().getConnection()) {
+            // should the sync stop halfway, the next ingest finds the snapshot stale against MAX(date) and reloads
+            // only days after maxDate are written, so MERGE is just a guard against a concurrent sync
+            try (RateBatchWriter writer = new RateBatchWriter(connection, TABLE_NAME, maxDate != null, batchSize, commitInterval)) {
+                syncPlanner.sync(maxDate, LocalDate.now(clock), (date, currency, rate) -> {
+                    if (ingestCancelled) {
+                        throw new CancellationException("Ingest cancelled");
                     }
-                }
-                connection.commit();
+                    writer.write(date, currency, rate);
+                    written[0]++;
+                });
+            } catch (CancellationException e) {
+                // the sources are read newest first, keeping part of them would leave a gap behind maxDate
+                deleteAfter(connection, maxDate);
+            } catch (IOException e) {
+                e.printStackTrace();
+                deleteAfter(connection, maxDate);
+            }
+            // a sync that found nothing new leaves the table as the snapshot already has it
+            if (written[0] > 0 || (maxDate != null && isSnapshotStale(maxDate))) {
+                reloadRateMatrix();
             }
-
-            ExchangeRateGUI.setPreparingDatabase(false);
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    private static void deleteAfter(Connection connection, LocalDate maxDate) throws SQLException
+    {
+        StringBuilder sql = new StringBuilder("DELETE FROM ");
+        sql.append(TABLE_NAME);
+        if (maxDate != null) {
+            sql.append(" WHERE date > ?");
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            if (maxDate != null) {
+                statement.setDate(1, java.sql.Date.valueOf(maxDate));
+            }
+            statement.executeUpdate();
+        }
+        connection.commit();
+    }
+
     static Map<LocalDate, Map<String, Double>> getCompleteDataFromDatabase()
     {
         Map<LocalDate, Map<String, Double>> historicReferenceRates = new LinkedHashMap<>();
-
-        try (final Connection connection = datasource.getConnection()) {
-            if (Database.tableExists(connection, TABLE_NAME.toUpperCase())) {
-                try (Statement statement = connection.createStatement()) {
-                    StringBuilder sql = new StringBuilder("SELECT date, currency, value FROM ");
-                    sql.append(TABLE_NAME);
-
-                    try (ResultSet resultSet = statement.executeQuery(sql.toString())) {
-                        LocalDate referenceRatesDate = null;
-                        Map<String, Double> dailyReferenceRates = new TreeMap<>();
-                        while (resultSet.next()) {
-                            if (referenceRatesDate == null || resultSet.getDate("date").toLocalDate() != referenceRatesDate) {
-                                if (!dailyReferenceRates.isEmpty()) {
-                                    historicReferenceRates.put(referenceRatesDate, dailyReferenceRates);
-                                }
-                                referenceRatesDate = resultSet.getDate("date").toLocalDate();
-                                dailyReferenceRates = new TreeMap<>();
-                            }
-                            dailyReferenceRates.put(
-                                resultSet.getString("currency"),
-                                resultSet.getDouble("value")
-                            );
-                        }
-                    }
+        RateMatrix matrix = getRateMatrix();
+
+        for (int row = 0; row < matrix.getDayCount(); row++) {
+            Map<String, Double> dailyReferenceRates = new TreeMap<>();
+            for (int column = 0; column < matrix.getCurrencyCount(); column++) {
+                double value = matrix.getRate(row, column);
+                if (!Double.isNaN(value)) {
+                    dailyReferenceRates.put(matrix.getCurrency(column), value);
                 }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            historicReferenceRates.put(matrix.getDate(row), dailyReferenceRates);
         }
 
         return historicReferenceRates;
     }
 
-    private static boolean dataNeedsUpdate()
+    private static LocalDate getMaxDate()
     {
-        try (final Connection connection = datasource.getConnection()) {
+        try (final Connection connection = Database.getDataSource().getConnection()) {
             if (Database.tableExists(connection, TABLE_NAME.toUpperCase())) {
-                try (Statement statement = connection.createStatement()) {
-                    StringBuilder sql = new StringBuilder("SELECT MAX(date) AS max_date FROM ");
-                    sql.append(TABLE_NAME);
-
-                    try (ResultSet resultSet = statement.executeQuery(sql.toString())) {
-                        if (resultSet.next()) {
-                            LocalDateTime now = LocalDateTime.now(ZoneId.of("Europe/Berlin"));
-                            LocalDate maxDate = resultSet.getDate("max_date").toLocalDate();
-                            if (resultSet.getDate("max_date").toLocalDate().isBefore(now.toLocalDate())) {
-                                long dateDiff = DAYS.between(maxDate, now.toLocalDate());
-                                if (dateDiff == 0) {
-                                    return false;
-                                } else if (dateDiff == 1) {
-                                    return now.getHour() > 16 || (now.getHour() == 16 && now.getMinute() > 1);
-                                } else if (dateDiff > 1 && dateDiff < 7) {
-                                    return !(DayOfWeek.FRIDAY == maxDate.getDayOfWeek() &&
-                                            Arrays.asList(DayOfWeek.SATURDAY, DayOfWeek.SUNDAY).contains(now.getDayOfWeek()));
-                                } else if (dateDiff > 7) {
-                                    return true;
-                                } else {
-                                    return true;
-                                }
-                            } else {
-                                return false;
-                            }
-                        } else {
-                            return true;
-                        }
+                try (
+                    PreparedStatement statement = connection.prepareStatement(MAX_DATE_SQL);
+                    ResultSet resultSet = statement.executeQuery()
+                ) {
+                    if (resultSet.next() && resultSet.getDate("max_date") != null) {
+                        return resultSet.getDate("max_date").toLocalDate();
                     }
                 }
-            } else {
-                return true;
             }
         } catch (SQLException e) {
             e.printStackTrace();
-            return true;
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the rates in memory, an empty matrix until the first ingest has loaded them.
+     */
+    static RateMatrix getRateMatrix()
+    {
+        RateMatrix matrix = HistoricReferenceRates.matrix;
+        return matrix == null ? RateMatrix.EMPTY : matrix;
+    }
+
+    private static void loadRateMatrix()
+    {
+        RateMatrix snapshot = RateMatrixFile.read(getSnapshotPath());
+        if (snapshot != null) {
+            matrix = snapshot;
+        } else {
+            reloadRateMatrix();
         }
     }
 
-    private static boolean dataTableEmpty()
+    private static Path getSnapshotPath()
     {
-        try (final Connection connection = datasource.getConnection()) {
+        return Database.getDirectory().resolve(RateMatrixFile.FILE_NAME);
+    }
+
+    private static void reloadRateMatrix()
+    {
+        try (final Connection connection = Database.getDataSource().getConnection()) {
             if (Database.tableExists(connection, TABLE_NAME.toUpperCase())) {
-                try (Statement statement = connection.createStatement()) {
-                    StringBuilder sql = new StringBuilder("SELECT COUNT(*) AS num_rows FROM ");
-                    sql.append(TABLE_NAME);
-
-                    try (ResultSet resultSet = statement.executeQuery(sql.toString())) {
-                        if (resultSet.next()) {
-                            return resultSet.getInt("num_rows") <= 0;
-                        } else {
-                            return true;
-                        }
-                    }
-                }
+                matrix = RateMatrix.load(connection, TABLE_NAME);
+                RateMatrixFile.write(matrix, getSnapshotPath());
             } else {
-                return true;
+                matrix = RateMatrix.EMPTY;
             }
-        } catch (SQLException e) {
+        } catch (SQLException | IOException e) {
             e.printStackTrace();
-            return true;
+            if (matrix == null) {
+                matrix = RateMatrix.EMPTY;
+            }
         }
     }
 
@@ -300,45 +330,50 @@ class HistoricReferenceRates
     static Map<LocalDate, Double> getCurrencyHistory(String currency, String baseCurrency)
     {
         Map<LocalDate, Double> rates = new TreeMap<>();
-        StringBuilder sql;
+        RateSeries series = getCurrencySeries(currency, baseCurrency);
 
-        try (final Connection connection = datasource.getConnection()) {
-            if (Database.tableExists(connection, TABLE_NAME.toUpperCase())) {
-                if (baseCurrency.equals(ReferenceRates.REFERENCE_CURRENCY)) {
-                    sql = new StringBuilder("SELECT date, value FROM ");
-                    sql.append(TABLE_NAME);
-                    sql.append(" WHERE currency = ? AND value > 0 ORDER BY date ASC");
-                } else {
-                    sql = new StringBuilder("SELECT t1.date, ROUND(t1.value / t2.value, 4) AS value FROM ");
-                    sql.append(TABLE_NAME);
-                    sql.append(" AS t1 INNER JOIN ");
-                    sql.append(TABLE_NAME);
-                    sql.append(" AS t2 ON t1.date = t2.date AND t2.currency = ? WHERE t1.currency = ? AND t1.value > 0 ORDER BY t1.date ASC");
-                }
+        for (int i = 0; i < series.size(); i++) {
+            rates.put(series.getDate(i), series.getValue(i));
+        }
 
-                try (PreparedStatement preparedStatement = connection.prepareStatement(sql.toString())) {
-                    if (baseCurrency.equals(ReferenceRates.REFERENCE_CURRENCY)) {
-                        preparedStatement.setString(1, currency.toUpperCase());
-                    } else {
-                        preparedStatement.setString(1, baseCurrency.toUpperCase());
-                        preparedStatement.setString(2, currency.toUpperCase());
-                    }
+        return rates;
+    }
 
-                    try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                        while (resultSet.next()) {
-                            rates.put(
-                                resultSet.getDate("date").toLocalDate(),
-                                resultSet.getDouble("value")
-                            );
-                        }
-                    }
-                }
+    static RateSeries getCurrencySeries(String currency, String baseCurrency)
+    {
+        RateMatrix matrix = getRateMatrix();
+        RateSeries rates = getReferenceSeries(matrix, currency);
+
+        if (baseCurrency.equals(ReferenceRates.REFERENCE_CURRENCY)) {
+            return rates;
+        }
+        return RateSeries.cross(rates, getReferenceSeries(matrix, baseCurrency));
+    }
+
+    /**
+     * Returns the positive rates of the currency against the reference currency.
+     */
+    private static RateSeries getReferenceSeries(RateMatrix matrix, String currency)
+    {
+        int column = matrix.columnOf(currency.toUpperCase());
+
+        if (column < 0) {
+            return RateSeries.EMPTY;
+        }
+
+        int[] epochDays = new int[matrix.getDayCount()];
+        double[] values = new double[matrix.getDayCount()];
+        int size = 0;
+
+        for (int row = 0; row < matrix.getDayCount(); row++) {
+            double value = matrix.getRate(row, column);
+            if (value > 0) {
+                epochDays[size] = matrix.getEpochDay(row);
+                values[size++] = value;
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
 
-        return rates;
+        return new RateSeries(Arrays.copyOf(epochDays, size), Arrays.copyOf(values, size));
     }
 
     static Map<String, Double> getRates()
@@ -349,28 +384,16 @@ class HistoricReferenceRates
     static Map<String, Double> getRates(LocalDate localDate)
     {
         Map<String, Double> rates = new TreeMap<>();
-
-        try (final Connection connection = datasource.getConnection()) {
-            if (Database.tableExists(connection, TABLE_NAME.toUpperCase())) {
-                StringBuilder sql = new StringBuilder("SELECT currency, value FROM ");
-                sql.append(TABLE_NAME);
-                sql.append(" WHERE date = ? ORDER BY currency ASC");
-
-                try (PreparedStatement preparedStatement = connection.prepareStatement(sql.toString())) {
-                    preparedStatement.setDate(1, Date.valueOf(localDate));
-
-                    try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                        while (resultSet.next()) {
-                            rates.put(
-                                resultSet.getString("currency"),
-                                resultSet.getDouble("value")
-                            );
-                        }
-                    }
+        RateMatrix matrix = getRateMatrix();
+        int row = matrix.rowOf(localDate.toEpochDay());
+
+        if (row >= 0) {
+            for (int column = 0; column < matrix.getCurrencyCount(); column++) {
+                double value = matrix.getRate(row, column);
+                if (!Double.isNaN(value)) {
+                    rates.put(matrix.getCurrency(column), value);
                 }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
 
         return rates;
@@ -383,27 +406,32 @@ class HistoricReferenceRates
 
     static double getCurrencyRate(String currency, LocalDate localDate)
     {
-        try (final Connection connection = datasource.getConnection()) {
-            if (Database.tableExists(connection, TABLE_NAME.toUpperCase())) {
-                StringBuilder sql = new StringBuilder("SELECT value FROM ");
-                sql.append(TABLE_NAME);
-                sql.append(" WHERE currency = ? AND date <= ? ORDER BY date DESC LIMIT 1");
-
-                try (PreparedStatement preparedStatement = connection.prepareStatement(sql.toString())) {
-                    preparedStatement.setString(1, currency);
-                    preparedStatement.setDate(2, Date.valueOf(localDate));
-
-                    try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                        if (resultSet.next()) {
-                            return resultSet.getDouble("value");
-                        }
-                    }
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        double rate = getAsOfIndex().getRate(currency, localDate.toEpochDay(), true);
+        return Double.isNaN(rate) ? 0d : rate;
+    }
+
+    /**
+     * Fills rates[i] with the rate of currencies[i] on dates[i] for every i, NaN where there is none.
+     * With carryForward a day without a publication, like a weekend or a TARGET holiday, gets the last
+     * rate published before it.
+     */
+    static void getCurrencyRates(String[] currencies, LocalDate[] dates, double[] rates, boolean carryForward)
+    {
+        int[] epochDays = new int[dates.length];
+        for (int i = 0; i < dates.length; i++) {
+            epochDays[i] = (int) dates[i].toEpochDay();
         }
+        getAsOfIndex().getRates(currencies, epochDays, rates, carryForward);
+    }
 
-        return 0d;
+    private static AsOfRateIndex getAsOfIndex()
+    {
+        RateMatrix matrix = getRateMatrix();
+        AsOfRateIndex index = asOfIndex;
+        if (index == null || !index.isBuiltFrom(matrix)) {
+            index = new AsOfRateIndex(matrix);
+            asOfIndex = index;
+        }
+        return index;
     }
 }
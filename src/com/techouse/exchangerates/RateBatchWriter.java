@@ -0,0 +1,108 @@
+package com.techouse.exchangerates;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+class RateBatchWriter implements AutoCloseable
+{
+    static final int DEFAULT_BATCH_SIZE = Integer.getInteger("exchangerates.ingest.batchSize", 1000);
+    static final int DEFAULT_COMMIT_INTERVAL = Integer.getInteger("exchangerates.ingest.commitInterval", 20);
+
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private final int batchSize;
+    private final int commitInterval;
+    private int pendingRows = 0;
+    private int pendingBatches = 0;
+
+    /**
+     * Rows are sent in JDBC batches of batchSize and committed every commitInterval batches.
+     * With merge enabled existing (date, currency) rows are left untouched, otherwise the
+     * table is assumed not to contain any of the written keys and a plain INSERT is used.
+     */
+    RateBatchWriter(Connection connection, String table, boolean merge, int batchSize, int commitInterval) throws SQLException
+    {
+        if (batchSize < 1 || commitInterval < 1) {
+            throw new IllegalArgumentException("Batch size and commit interval must be positive.");
+        }
+
+        this.connection = connection;
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+
+        this.connection.setAutoCommit(false);
+        this.statement = connection.prepareStatement(buildSql(table, merge));
+    }
+
+    /**
+     * Returns the statement the writer prepares, taking the date, currency and value as parameters.
+     */
+    static String buildSql(String table, boolean merge)
+    {
+        StringBuilder sql;
+        if (merge) {
+            sql = new StringBuilder("MERGE INTO ");
+            sql.append(table);
+            sql.append(" AS t USING (VALUES (CAST(? AS DATE), CAST(? AS CHAR(3)), CAST(? AS DOUBLE)))");
+            sql.append(" AS v (date, currency, value) ON t.date = v.date AND t.currency = v.currency");
+            sql.append(" WHEN NOT MATCHED THEN INSERT (date, currency, value) VALUES (v.date, v.currency, v.value)");
+        } else {
+            sql = new StringBuilder("INSERT INTO ");
+            sql.append(table);
+            sql.append(" (date, currency, value) VALUES (?, ?, ?)");
+        }
+        return sql.toString();
+    }
+
+    void write(LocalDate date, String currency, double value) throws SQLException
+    {
+        write(Date.valueOf(date), currency, value);
+    }
+
+    void write(Date date, String currency, double value) throws SQLException
+    {
+        statement.setDate(1, date);
+        statement.setString(2, currency);
+        statement.setDouble(3, value);
+        statement.addBatch();
+
+        if (++pendingRows >= batchSize) {
+            executeBatch();
+        }
+    }
+
+    private void executeBatch() throws SQLException
+    {
+        if (pendingRows == 0) {
+            return;
+        }
+
+        statement.executeBatch();
+        pendingRows = 0;
+
+        if (++pendingBatches >= commitInterval) {
+            connection.commit();
+            pendingBatches = 0;
+        }
+    }
+
+    void flush() throws SQLException
+    {
+        executeBatch();
+        connection.commit();
+        pendingBatches = 0;
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        try {
+            flush();
+        } finally {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.techouse.exchangerates;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tokenizes the ECB historic CSV straight from the byte stream. Rows are parsed into a reusable
+ * {@link Row}, so apart from the header no per-line or per-field objects are created.
+ */
+class RateCsvReader
+{
+    private static final byte DELIMITER = ',';
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // longest mantissa that is still exactly representable as a double
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private final InputStream inputStream;
+    private final byte[] buffer = new byte[64 * 1024];
+    private int position = 0;
+    private int limit = 0;
+    private byte[] line = new byte[1024];
+    private int lineLength = 0;
+
+    static class Row
+    {
+        LocalDate date;
+        final double[] values;
+
+        Row(int columns)
+        {
+            this.values = new double[columns];
+        }
+    }
+
+    RateCsvReader(InputStream inputStream)
+    {
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * Returns the currency columns of the header, without the leading Date column.
+     */
+    String[] readHeader() throws IOException
+    {
+        if (!nextLine()) {
+            throw new IOException("Missing CSV header.");
+        }
+
+        List<String> keys = new ArrayList<>();
+        int start = indexOf(DELIMITER, 0) + 1;
+        while (start > 0 && start <= lineLength) {
+            int end = indexOf(DELIMITER, start);
+            if (end < 0) {
+                end = lineLength;
+            }
+            keys.add(new String(line, start, end - start, StandardCharsets.US_ASCII));
+            start = end + 1;
+        }
+        // mirror String.split, which drops trailing empty columns
+        while (!keys.isEmpty() && keys.get(keys.size() - 1).isEmpty()) {
+            keys.remove(keys.size() - 1);
+        }
+
+        return keys.toArray(new String[keys.size()]);
+    }
+
+    /**
+     * Fills the row with the next line of the file. Values that are not numeric, like N/A, are read as 0.
+     */
+    boolean readRow(Row row) throws IOException
+    {
+        do {
+            if (!nextLine()) {
+                return false;
+            }
+        } while (lineLength == 0);
+
+        int end = indexOf(DELIMITER, 0);
+        if (end != 10) {
+            throw new IOException("Invalid date column: " + new String(line, 0, lineLength, StandardCharsets.US_ASCII));
+        }
+        row.date = LocalDate.of(digits(0, 4), digits(5, 2), digits(8, 2));
+
+        int start = end + 1;
+        for (int i = 0; i < row.values.length; i++) {
+            if (start > lineLength) {
+                throw new IOException("Keys and values lengths do not match.");
+            }
+            end = indexOf(DELIMITER, start);
+            if (end < 0) {
+                end = lineLength;
+            }
+            row.values[i] = parseRate(start, end);
+            start = end + 1;
+        }
+        for (; start < lineLength; start++) {
+            if (line[start] != DELIMITER) {
+                throw new IOException("Keys and values lengths do not match.");
+            }
+        }
+
+        return true;
+    }
+
+    private double parseRate(int start, int end)
+    {
+        boolean negative = start < end && line[start] == '-';
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            byte b = line[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    return parseRateSlow(start, end);
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return parseRateSlow(start, end);
+            }
+        }
+
+        if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length) {
+            return parseRateSlow(start, end);
+        }
+
+        // both operands are exact, so the division is correctly rounded just like Double.parseDouble
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private double parseRateSlow(int start, int end)
+    {
+        String value = new String(line, start, end - start, StandardCharsets.US_ASCII);
+        return DataUtils.isNumeric(value) ? Double.parseDouble(value) : 0d;
+    }
+
+    private int digits(int start, int length) throws IOException
+    {
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            byte b = line[i];
+            if (b < '0' || b > '9') {
+                throw new IOException("Invalid date column: " + new String(line, 0, lineLength, StandardCharsets.US_ASCII));
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    private int indexOf(byte b, int from)
+    {
+        for (int i = from; i < lineLength; i++) {
+            if (line[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nextLine() throws IOException
+    {
+        lineLength = 0;
+        boolean read = false;
+
+        while (true) {
+            if (position >= limit) {
+                limit = inputStream.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                        lineLength--;
+                    }
+                    return read;
+                }
+            }
+            read = true;
+
+            byte b = buffer[position++];
+            if (b == '\n') {
+                if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                return true;
+            }
+            if (lineLength == line.length) {
+                byte[] grown = new byte[line.length * 2];
+                System.arraycopy(line, 0, grown, 0, lineLength);
+                line = grown;
+            }
+            line[lineLength++] = b;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.techouse.exchangerates;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+interface RateHandler
+{
+    void handle(LocalDate date, String currency, double rate) throws SQLException;
+}
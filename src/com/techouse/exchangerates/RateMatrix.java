@@ -0,0 +1,188 @@
+package com.techouse.exchangerates;
+
+import java.nio.DoubleBuffer;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable in-memory copy of the historic reference rates, laid out as one dense row of
+ * doubles per publication day with a column per currency. Cells without a quote are NaN.
+ */
+class RateMatrix
+{
+    static final RateMatrix EMPTY = new RateMatrix(new String[0], new int[0], new double[0]);
+
+    private final String[] currencies;
+    private final Map<String, Integer> currencyIndex;
+    private final int[] epochDays;
+    private final int[] dayIndex;
+    private final DoubleBuffer rates;
+    private final int rowStride;
+    private final int rowOffset;
+
+    private RateMatrix(String[] currencies, int[] epochDays, double[] rates)
+    {
+        this(currencies, epochDays, DoubleBuffer.wrap(rates), currencies.length, 0);
+    }
+
+    /**
+     * The rate of row r and column c is read from rates at r * rowStride + rowOffset + c, which lets the
+     * matrix sit directly on top of a mapped {@link RateMatrixFile}.
+     */
+    RateMatrix(String[] currencies, int[] epochDays, DoubleBuffer rates, int rowStride, int rowOffset)
+    {
+        this.currencies = currencies;
+        this.epochDays = epochDays;
+        this.rates = rates;
+        this.rowStride = rowStride;
+        this.rowOffset = rowOffset;
+
+        this.currencyIndex = new HashMap<>();
+        for (int i = 0; i < currencies.length; i++) {
+            this.currencyIndex.put(currencies[i], i);
+        }
+
+        if (epochDays.length > 0) {
+            this.dayIndex = new int[epochDays[epochDays.length - 1] - epochDays[0] + 1];
+            Arrays.fill(this.dayIndex, -1);
+            for (int row = 0; row < epochDays.length; row++) {
+                this.dayIndex[epochDays[row] - epochDays[0]] = row;
+            }
+        } else {
+            this.dayIndex = new int[0];
+        }
+    }
+
+    static RateMatrix load(Connection connection, String table) throws SQLException
+    {
+        List<String> currencies = new ArrayList<>();
+        int days;
+
+        try (Statement statement = connection.createStatement()) {
+            StringBuilder sql = new StringBuilder("SELECT DISTINCT currency FROM ");
+            sql.append(table);
+            sql.append(" ORDER BY currency ASC");
+
+            try (ResultSet resultSet = statement.executeQuery(sql.toString())) {
+                while (resultSet.next()) {
+                    currencies.add(resultSet.getString("currency"));
+                }
+            }
+
+            sql = new StringBuilder("SELECT COUNT(DISTINCT date) AS num_days FROM ");
+            sql.append(table);
+
+            try (ResultSet resultSet = statement.executeQuery(sql.toString())) {
+                days = resultSet.next() ? resultSet.getInt("num_days") : 0;
+            }
+
+            Map<String, Integer> columns = new HashMap<>();
+            for (String currency : currencies) {
+                columns.put(currency, columns.size());
+            }
+            int[] epochDays = new int[days];
+            double[] rates = new double[days * currencies.size()];
+            Arrays.fill(rates, Double.NaN);
+
+            sql = new StringBuilder("SELECT date, currency, value FROM ");
+            sql.append(table);
+            sql.append(" ORDER BY date ASC");
+
+            int row = -1;
+            long previousDate = Long.MIN_VALUE;
+            try (ResultSet resultSet = statement.executeQuery(sql.toString())) {
+                while (resultSet.next()) {
+                    long epochDay = resultSet.getDate("date").toLocalDate().toEpochDay();
+                    if (epochDay != previousDate) {
+                        if (row + 1 == days) {
+                            // rows written after the day count was taken are picked up by the next load
+                            break;
+                        }
+                        previousDate = epochDay;
+                        epochDays[++row] = (int) epochDay;
+                    }
+                    rates[row * currencies.size() + columns.get(resultSet.getString("currency"))] = resultSet.getDouble("value");
+                }
+            }
+
+            return new RateMatrix(currencies.toArray(new String[currencies.size()]), epochDays, rates);
+        }
+    }
+
+    int getCurrencyCount()
+    {
+        return currencies.length;
+    }
+
+    String getCurrency(int column)
+    {
+        return currencies[column];
+    }
+
+    int getDayCount()
+    {
+        return epochDays.length;
+    }
+
+    int getEpochDay(int row)
+    {
+        return epochDays[row];
+    }
+
+    LocalDate getDate(int row)
+    {
+        return LocalDate.ofEpochDay(epochDays[row]);
+    }
+
+    /**
+     * Returns the column of the currency, or -1 when it has never been quoted.
+     */
+    int columnOf(String currency)
+    {
+        Integer column = currencyIndex.get(currency);
+        return column == null ? -1 : column;
+    }
+
+    /**
+     * Returns the row published on the given day, or -1 when there was no publication that day.
+     */
+    int rowOf(long epochDay)
+    {
+        if (epochDays.length == 0 || epochDay < epochDays[0] || epochDay > epochDays[epochDays.length - 1]) {
+            return -1;
+        }
+        return dayIndex[(int) (epochDay - epochDays[0])];
+    }
+
+    /**
+     * Returns the last row published on or before the given day, or -1 when there is none.
+     */
+    int rowOnOrBefore(long epochDay)
+    {
+        if (epochDays.length == 0 || epochDay < epochDays[0]) {
+            return -1;
+        }
+        if (epochDay >= epochDays[epochDays.length - 1]) {
+            return epochDays.length - 1;
+        }
+        for (int offset = (int) (epochDay - epochDays[0]); offset >= 0; offset--) {
+            if (dayIndex[offset] >= 0) {
+                return dayIndex[offset];
+            }
+        }
+        return -1;
+    }
+
+    double getRate(int row, int column)
+    {
+        return rates.get(row * rowStride + rowOffset + column);
+    }
+}
@@ -0,0 +1,223 @@
+package com.techouse.exchangerates;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a {@link RateMatrix}. The layout (little endian) is a 24 byte header
+ * (magic, version, currency count, day count, CRC32 of everything after the header), a dictionary of
+ * 4 byte currency codes padded to 8 bytes, and one fixed-width row per day holding the epoch day as a
+ * long followed by a double per currency. Snapshots are read through a memory mapping, so the rates are
+ * never copied onto the heap.
+ * <p>
+ * A mapped file cannot be replaced or deleted on Windows while the mapping lives, so every write goes to
+ * a new generation, path.1, path.2 and so on, and the newest valid generation is the one read. Older
+ * generations are deleted when they are no longer mapped, at the latest by a later write. A snapshot at
+ * the plain path, as written by earlier versions, counts as generation 0.
+ */
+class RateMatrixFile
+{
+    static final String FILE_NAME = "ExchangeRatesDB.rates";
+    private static final int MAGIC = 0x45524d58; // ERMX
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int CODE_SIZE = 4;
+
+    static RateMatrix read(Path path)
+    {
+        List<Long> generations = getGenerations(path);
+        for (int i = generations.size() - 1; i >= 0; i--) {
+            RateMatrix matrix = readGeneration(resolve(path, generations.get(i)));
+            if (matrix != null) {
+                return matrix;
+            }
+        }
+        return null;
+    }
+
+    private static RateMatrix readGeneration(Path path)
+    {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid snapshot size " + size);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported snapshot format");
+            }
+            int currencyCount = buffer.getInt(8);
+            int dayCount = buffer.getInt(12);
+            long checksum = buffer.getLong(16);
+
+            int rowsOffset = HEADER_SIZE + dictionarySize(currencyCount);
+            int rowStride = currencyCount + 1;
+            if (currencyCount < 0 || dayCount < 0 || size != rowsOffset + (long) dayCount * rowStride * Double.BYTES) {
+                throw new IOException("Truncated snapshot");
+            }
+
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if (crc.getValue() != checksum) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+
+            String[] currencies = new String[currencyCount];
+            byte[] code = new byte[CODE_SIZE];
+            for (int i = 0; i < currencyCount; i++) {
+                ByteBuffer entry = buffer.duplicate();
+                entry.position(HEADER_SIZE + i * CODE_SIZE);
+                entry.get(code);
+                int length = 0;
+                while (length < CODE_SIZE && code[length] != 0) {
+                    length++;
+                }
+                currencies[i] = new String(code, 0, length, StandardCharsets.US_ASCII);
+            }
+
+            int[] epochDays = new int[dayCount];
+            for (int row = 0; row < dayCount; row++) {
+                epochDays[row] = (int) buffer.getLong(rowsOffset + row * rowStride * Double.BYTES);
+            }
+
+            ByteBuffer rows = buffer.duplicate();
+            rows.position(rowsOffset);
+            DoubleBuffer rates = rows.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+
+            return new RateMatrix(currencies, epochDays, rates, rowStride, 1);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to the target, atomically moves it into place as the
+     * next generation and deletes the older generations that are not mapped any more.
+     */
+    static void write(RateMatrix matrix, Path path) throws IOException
+    {
+        int currencyCount = matrix.getCurrencyCount();
+        int dayCount = matrix.getDayCount();
+        int rowsOffset = HEADER_SIZE + dictionarySize(currencyCount);
+        ByteBuffer buffer = ByteBuffer
+            .allocate(rowsOffset + dayCount * (currencyCount + 1) * Double.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.position(HEADER_SIZE);
+        for (int column = 0; column < currencyCount; column++) {
+            byte[] code = matrix.getCurrency(column).getBytes(StandardCharsets.US_ASCII);
+            if (code.length > CODE_SIZE) {
+                throw new IOException("Currency code too long: " + matrix.getCurrency(column));
+            }
+            buffer.put(code);
+            buffer.put(new byte[CODE_SIZE - code.length]);
+        }
+        buffer.position(rowsOffset);
+        for (int row = 0; row < dayCount; row++) {
+            buffer.putLong(matrix.getEpochDay(row));
+            for (int column = 0; column < currencyCount; column++) {
+                buffer.putDouble(matrix.getRate(row, column));
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, buffer.capacity() - HEADER_SIZE);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, currencyCount);
+        buffer.putInt(12, dayCount);
+        buffer.putLong(16, crc.getValue());
+        buffer.rewind();
+
+        List<Long> generations = getGenerations(path);
+        long generation = generations.isEmpty() ? 1 : generations.get(generations.size() - 1) + 1;
+
+        Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), FILE_NAME, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            // the target name is new, so nothing that is mapped gets replaced
+            try {
+                Files.move(temporary, resolve(path, generation), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, resolve(path, generation));
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        for (long older : generations) {
+            try {
+                Files.deleteIfExists(resolve(path, older));
+            } catch (IOException ignored) {
+                // still mapped on Windows, the next write tries again
+            }
+        }
+    }
+
+    /**
+     * Returns the generations present next to path, oldest first.
+     */
+    private static List<Long> getGenerations(Path path)
+    {
+        List<Long> generations = new ArrayList<>();
+        Path directory = path.toAbsolutePath().getParent();
+        String prefix = path.getFileName().toString() + '.';
+
+        if (Files.isRegularFile(path)) {
+            generations.add(0L);
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : files) {
+                String suffix = file.getFileName().toString().substring(prefix.length());
+                if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit) && suffix.length() < 19) {
+                    generations.add(Long.parseLong(suffix));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private static Path resolve(Path path, long generation)
+    {
+        return generation == 0 ? path : path.resolveSibling(path.getFileName().toString() + '.' + generation);
+    }
+
+    private static int dictionarySize(int currencyCount)
+    {
+        return (currencyCount * CODE_SIZE + 7) & ~7;
+    }
+}
@@ -0,0 +1,81 @@
+package com.techouse.exchangerates;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Multi-resolution copy of a {@link RateSeries}. Level 0 holds the raw points and every further level
+ * keeps the lowest and the highest point of buckets twice as large as those of the level before, so
+ * a window can be served at the finest level that still fits the screen while peaks and troughs stay
+ * visible at every zoom.
+ */
+class RatePyramid
+{
+    private final RateSeries[] levels;
+
+    RatePyramid(RateSeries series)
+    {
+        List<RateSeries> levels = new ArrayList<>();
+        levels.add(series);
+        // buckets of two would keep every point, so the first reducing level uses four
+        for (int bucketSize = 4; bucketSize < 2 * series.size(); bucketSize <<= 1) {
+            levels.add(minMax(series, bucketSize));
+        }
+        this.levels = levels.toArray(new RateSeries[levels.size()]);
+    }
+
+    /**
+     * Returns the points between from and to at the finest level that has at most maxPoints of them,
+     * plus the neighbouring point on either side so lines reach the edges of the window.
+     * A null bound leaves that side open.
+     */
+    RateSeries getSeries(LocalDate from, LocalDate to, int maxPoints)
+    {
+        for (int i = 0; i < levels.length; i++) {
+            RateSeries level = levels[i];
+            int start = from == null ? 0 : level.lowerBound(from.toEpochDay());
+            int end = to == null ? level.size() : level.lowerBound(to.toEpochDay() + 1);
+
+            if (end - start <= maxPoints || i == levels.length - 1) {
+                return level.subSeries(Math.max(start - 1, 0), Math.min(end + 1, level.size()));
+            }
+        }
+        return RateSeries.EMPTY;
+    }
+
+    private static RateSeries minMax(RateSeries series, int bucketSize)
+    {
+        int buckets = (series.size() + bucketSize - 1) / bucketSize;
+        int[] epochDays = new int[2 * buckets];
+        double[] values = new double[2 * buckets];
+        int size = 0;
+
+        for (int start = 0; start < series.size(); start += bucketSize) {
+            int end = Math.min(start + bucketSize, series.size());
+            int min = start;
+            int max = start;
+            for (int i = start + 1; i < end; i++) {
+                if (series.getValue(i) < series.getValue(min)) {
+                    min = i;
+                }
+                if (series.getValue(i) > series.getValue(max)) {
+                    max = i;
+                }
+            }
+
+            // both extremes in the order they happened
+            int first = Math.min(min, max);
+            int second = Math.max(min, max);
+            epochDays[size] = series.getEpochDay(first);
+            values[size++] = series.getValue(first);
+            if (second != first) {
+                epochDays[size] = series.getEpochDay(second);
+                values[size++] = series.getValue(second);
+            }
+        }
+
+        return new RateSeries(Arrays.copyOf(epochDays, size), Arrays.copyOf(values, size));
+    }
+}
@@ -0,0 +1,130 @@
+package com.techouse.exchangerates;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Immutable history of one rate as parallel arrays of ascending epoch days and values.
+ */
+class RateSeries
+{
+    static final RateSeries EMPTY = new RateSeries(new int[0], new double[0]);
+
+    private final int[] epochDays;
+    private final double[] values;
+
+    RateSeries(int[] epochDays, double[] values)
+    {
+        if (epochDays.length != values.length) {
+            throw new IllegalArgumentException("Every day needs exactly one value.");
+        }
+        this.epochDays = epochDays;
+        this.values = values;
+    }
+
+    int size()
+    {
+        return epochDays.length;
+    }
+
+    int getEpochDay(int index)
+    {
+        return epochDays[index];
+    }
+
+    LocalDate getDate(int index)
+    {
+        return LocalDate.ofEpochDay(epochDays[index]);
+    }
+
+    double getValue(int index)
+    {
+        return values[index];
+    }
+
+    /**
+     * Returns the points from the first day on or after from up to the last day on or before to.
+     * A null bound leaves that side open.
+     */
+    RateSeries range(LocalDate from, LocalDate to)
+    {
+        int start = from == null ? 0 : lowerBound(from.toEpochDay());
+        int end = to == null ? epochDays.length : lowerBound(to.toEpochDay() + 1);
+        return subSeries(start, end);
+    }
+
+    /**
+     * Returns the points from index start inclusive to end exclusive.
+     */
+    RateSeries subSeries(int start, int end)
+    {
+        if (start == 0 && end == epochDays.length) {
+            return this;
+        }
+        if (start >= end) {
+            return EMPTY;
+        }
+        return new RateSeries(Arrays.copyOfRange(epochDays, start, end), Arrays.copyOfRange(values, start, end));
+    }
+
+    /**
+     * Returns the index of the first point on or after the given day.
+     */
+    int lowerBound(long epochDay)
+    {
+        int low = 0;
+        int high = epochDays.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (epochDays[middle] < epochDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the point closest to the given, possibly fractional, day or -1 when the series is empty.
+     */
+    int nearestIndex(double epochDay)
+    {
+        if (epochDays.length == 0) {
+            return -1;
+        }
+        int index = lowerBound((long) Math.ceil(epochDay));
+        if (index == epochDays.length || (index > 0 && epochDay - epochDays[index - 1] <= epochDays[index] - epochDay)) {
+            index--;
+        }
+        return index;
+    }
+
+    /**
+     * Derives the quote/base cross rate of every day both series have a positive value on, rounded to
+     * 4 decimals like ROUND(quote / base, 4) in HSQLDB. Both series must share the same reference currency.
+     */
+    static RateSeries cross(RateSeries quote, RateSeries base)
+    {
+        int[] epochDays = new int[Math.min(quote.size(), base.size())];
+        double[] values = new double[epochDays.length];
+        int size = 0;
+
+        for (int i = 0, j = 0; i < quote.size() && j < base.size(); ) {
+            if (quote.epochDays[i] < base.epochDays[j]) {
+                i++;
+            } else if (quote.epochDays[i] > base.epochDays[j]) {
+                j++;
+            } else {
+                if (quote.values[i] > 0 && base.values[j] > 0) {
+                    epochDays[size] = quote.epochDays[i];
+                    values[size++] = Math.round(quote.values[i] / base.values[j] * 10000d) / 10000d;
+                }
+                i++;
+                j++;
+            }
+        }
+
+        return new RateSeries(Arrays.copyOf(epochDays, size), Arrays.copyOf(values, size));
+    }
+}
@@ -0,0 +1,114 @@
+package com.techouse.exchangerates;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.xy.AbstractXYDataset;
+
+/**
+ * Chart dataset that reads straight from the arrays of one or more {@link RateSeries}, so no objects
+ * are created per point. X values are the UTC midnight of each day in milliseconds, which is why the
+ * date axis and date formats of the chart use UTC as well.
+ */
+class RateSeriesDataset extends AbstractXYDataset implements DomainInfo
+{
+    static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final long serialVersionUID = 1L;
+
+    private final String[] keys;
+    private final RateSeries[] series;
+
+    RateSeriesDataset(String[] keys, RateSeries[] series)
+    {
+        if (keys.length != series.length) {
+            throw new IllegalArgumentException("Every series needs exactly one key.");
+        }
+        this.keys = keys;
+        this.series = series;
+    }
+
+    RateSeries getSeries(int series)
+    {
+        return this.series[series];
+    }
+
+    @Override
+    public int getSeriesCount()
+    {
+        return series.length;
+    }
+
+    @Override
+    public Comparable<?> getSeriesKey(int series)
+    {
+        return keys[series];
+    }
+
+    @Override
+    public DomainOrder getDomainOrder()
+    {
+        return DomainOrder.ASCENDING;
+    }
+
+    @Override
+    public int getItemCount(int series)
+    {
+        return this.series[series].size();
+    }
+
+    @Override
+    public double getXValue(int series, int item)
+    {
+        return this.series[series].getEpochDay(item) * MILLIS_PER_DAY;
+    }
+
+    @Override
+    public double getYValue(int series, int item)
+    {
+        return this.series[series].getValue(item);
+    }
+
+    @Override
+    public Number getX(int series, int item)
+    {
+        return getXValue(series, item);
+    }
+
+    @Override
+    public Number getY(int series, int item)
+    {
+        return getYValue(series, item);
+    }
+
+    @Override
+    public double getDomainLowerBound(boolean includeInterval)
+    {
+        double lower = Double.NaN;
+        for (RateSeries rates : series) {
+            if (rates.size() > 0 && !(rates.getEpochDay(0) * MILLIS_PER_DAY >= lower)) {
+                lower = rates.getEpochDay(0) * MILLIS_PER_DAY;
+            }
+        }
+        return lower;
+    }
+
+    @Override
+    public double getDomainUpperBound(boolean includeInterval)
+    {
+        double upper = Double.NaN;
+        for (RateSeries rates : series) {
+            if (rates.size() > 0 && !(rates.getEpochDay(rates.size() - 1) * MILLIS_PER_DAY <= upper)) {
+                upper = rates.getEpochDay(rates.size() - 1) * MILLIS_PER_DAY;
+            }
+        }
+        return upper;
+    }
+
+    @Override
+    public Range getDomainBounds(boolean includeInterval)
+    {
+        double lower = getDomainLowerBound(includeInterval);
+        double upper = getDomainUpperBound(includeInterval);
+        return Double.isNaN(lower) ? null : new Range(lower, upper);
+    }
+}
@@ -0,0 +1,334 @@
+package com.techouse.exchangerates;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless JSON service over the JDK's built-in HTTP server. Every request is answered from the rates
+ * already held in memory, the daily reference rates and the historic {@link RateMatrix}, so no request
+ * touches the database. Endpoints, all GET:
+ * <pre>
+ * /rates/latest?base=USD            latest reference rates, optionally as cross rates of a base
+ * /rates/2016-03-01?base=USD        rates of the last publication on or before a day
+ * /history?currency=USD&amp;base=GBP&amp;from=2016-01-01&amp;to=2016-12-31
+ * </pre>
+ * Requests run on virtual threads when the JDK has them, otherwise on a bounded pool. A
+ * {@link RefreshScheduler} keeps the rates current while the server runs.
+ */
+class RateServer
+{
+    static final int DEFAULT_PORT = Integer.getInteger("exchangerates.server.port", 8080);
+    private static final int POOL_THREADS = Integer.getInteger(
+        "exchangerates.server.threads", 4 * Runtime.getRuntime().availableProcessors()
+    );
+    private static final int POOL_QUEUE_SIZE = 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    RateServer(int port) throws IOException
+    {
+        // headers and body are written separately, so with Nagle's algorithm every response would wait
+        // for the client's delayed ACK of the headers, about 40 ms
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = newExecutor();
+        this.server.setExecutor(executor);
+        this.server.createContext("/rates/", this::handleRates);
+        this.server.createContext("/history", this::handleHistory);
+    }
+
+    /**
+     * Runs the serve command line: serve [PORT]. Returns once the server is listening.
+     */
+    static int run(String[] args)
+    {
+        int port = DEFAULT_PORT;
+        if (args.length > 1) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.out.println("Usage: serve [PORT]");
+                return 2;
+            }
+        }
+
+        // load both snapshots before the first request arrives
+        FetchClient.getDefault().fetch(ReferenceRates.ECB_DAILY_XML_URL);
+        HistoricReferenceRates.awaitIngest();
+        ReferenceRates.getSnapshot(true);
+
+        try {
+            RateServer rateServer = new RateServer(port);
+            rateServer.start();
+
+            RefreshScheduler refreshScheduler = new RefreshScheduler(
+                Clock.system(EcbCalendar.ZONE), HistoricReferenceRates::getLatestDay, HistoricReferenceRates::update
+            );
+            refreshScheduler.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(rateServer::stop));
+
+            StringBuilder message = new StringBuilder("Serving exchange rates on http://localhost:");
+            message.append(rateServer.getPort());
+            message.append('/');
+            System.out.println(message.toString());
+
+            return 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 1;
+        }
+    }
+
+    void start()
+    {
+        server.start();
+    }
+
+    void stop()
+    {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    private static ExecutorService newExecutor()
+    {
+        try {
+            // Executors.newVirtualThreadPerTaskExecutor() exists from Java 21 on
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // a full queue runs the request on the accepting thread, which slows down accepting new ones
+            return new ThreadPoolExecutor(
+                POOL_THREADS, POOL_THREADS, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(POOL_QUEUE_SIZE), new ThreadPoolExecutor.CallerRunsPolicy()
+            );
+        }
+    }
+
+    private void handleRates(HttpExchange exchange) throws IOException
+    {
+        try {
+            if (!checkMethod(exchange)) {
+                return;
+            }
+
+            Map<String, String> query = parseQuery(exchange);
+            String base = query.getOrDefault("base", ReferenceRates.REFERENCE_CURRENCY).toUpperCase();
+            String day = exchange.getRequestURI().getPath().substring("/rates/".length());
+
+            RateSnapshot snapshot;
+            if (day.equals("latest")) {
+                snapshot = ReferenceRates.getSnapshot();
+            } else {
+                RateMatrix matrix = HistoricReferenceRates.getRateMatrix();
+                int row = matrix.rowOnOrBefore(parseDate(day).toEpochDay());
+                if (row < 0) {
+                    sendError(exchange, 404, "No rates published on or before " + day);
+                    return;
+                }
+                Map<String, Double> referenceRates = new HashMap<>(HistoricReferenceRates.getRates(matrix.getDate(row)));
+                // currencies that were not quoted that day
+                referenceRates.values().removeIf(rate -> !(rate > 0));
+                referenceRates.put(ReferenceRates.REFERENCE_CURRENCY, 1d);
+                snapshot = new RateSnapshot(matrix.getDate(row), referenceRates);
+            }
+
+            Map<String, Double> rates;
+            if (base.equals(ReferenceRates.REFERENCE_CURRENCY)) {
+                rates = snapshot.asMap();
+            } else if (day.equals("latest")) {
+                rates = GetExchangeRate.getCrossRates(snapshot).getRates(base);
+            } else {
+                // a historic day is rarely asked again, one row costs a fraction of the whole matrix
+                rates = CrossRateMatrix.calculateRates(snapshot, base);
+            }
+            if (rates.isEmpty()) {
+                sendError(exchange, 404, "Unknown currency " + base);
+                return;
+            }
+
+            StringBuilder json = new StringBuilder(32 * rates.size());
+            json.append("{\"date\":");
+            appendString(json, snapshot.getDate() == null ? null : snapshot.getDate().toString());
+            json.append(",\"base\":");
+            appendString(json, base);
+            json.append(",\"rates\":{");
+            boolean first = true;
+            for (Map.Entry<String, Double> rate : new TreeMap<>(rates).entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                appendString(json, rate.getKey());
+                json.append(':');
+                json.append(rate.getValue());
+            }
+            json.append("}}");
+
+            send(exchange, 200, json);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleHistory(HttpExchange exchange) throws IOException
+    {
+        try {
+            if (!checkMethod(exchange)) {
+                return;
+            }
+
+            Map<String, String> query = parseQuery(exchange);
+            String currency = query.get("currency");
+            if (currency == null) {
+                throw new IllegalArgumentException("Missing parameter currency");
+            }
+            currency = currency.toUpperCase();
+            String base = query.getOrDefault("base", ReferenceRates.REFERENCE_CURRENCY).toUpperCase();
+            LocalDate from = query.containsKey("from") ? parseDate(query.get("from")) : null;
+            LocalDate to = query.containsKey("to") ? parseDate(query.get("to")) : null;
+
+            RateMatrix matrix = HistoricReferenceRates.getRateMatrix();
+            for (String code : new String[]{currency, base}) {
+                if (!code.equals(ReferenceRates.REFERENCE_CURRENCY) && matrix.columnOf(code) < 0) {
+                    sendError(exchange, 404, "Unknown currency " + code);
+                    return;
+                }
+            }
+
+            RateSeries series = HistoricReferenceRates.getCurrencySeries(currency, base).range(from, to);
+
+            StringBuilder json = new StringBuilder(64 + 24 * series.size());
+            json.append("{\"currency\":");
+            appendString(json, currency);
+            json.append(",\"base\":");
+            appendString(json, base);
+            json.append(",\"rates\":{");
+            for (int i = 0; i < series.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append('"');
+                json.append(series.getDate(i));
+                json.append("\":");
+                json.append(series.getValue(i));
+            }
+            json.append("}}");
+
+            send(exchange, 200, json);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static boolean checkMethod(HttpExchange exchange) throws IOException
+    {
+        if (exchange.getRequestMethod().equals("GET")) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", "GET");
+        sendError(exchange, 405, "Only GET is supported");
+        return false;
+    }
+
+    private static LocalDate parseDate(String date)
+    {
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Not a yyyy-MM-dd date: " + date);
+        }
+    }
+
+    private static Map<String, String> parseQuery(HttpExchange exchange) throws IOException
+    {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(
+                        URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(parameter.substring(separator + 1), "UTF-8")
+                    );
+                }
+            }
+        }
+
+        return parameters;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException
+    {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        json.append('}');
+        send(exchange, status, json);
+    }
+
+    private static void send(HttpExchange exchange, int status, CharSequence json) throws IOException
+    {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static void appendString(StringBuilder json, String value)
+    {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,87 @@
+package com.techouse.exchangerates;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Immutable set of reference rates published on one day, held as currencies in alphabetical order with
+ * their rates in a parallel array. A snapshot is completely built before it is shared and never changes
+ * afterwards, so any number of threads can read it without locking.
+ */
+class RateSnapshot
+{
+    static final RateSnapshot EMPTY = new RateSnapshot(null, Collections.singletonMap(ReferenceRates.REFERENCE_CURRENCY, 1d));
+
+    private final LocalDate date;
+    private final String[] currencies;
+    private final double[] rates;
+    private final Map<String, Double> rateMap;
+    private final SortedSet<String> currencySet;
+
+    RateSnapshot(LocalDate date, Map<String, Double> rates)
+    {
+        SortedMap<String, Double> sortedRates = new TreeMap<>(rates);
+
+        this.date = date;
+        this.currencies = sortedRates.keySet().toArray(new String[sortedRates.size()]);
+        this.rates = new double[currencies.length];
+        for (int i = 0; i < currencies.length; i++) {
+            this.rates[i] = sortedRates.get(currencies[i]);
+        }
+        this.rateMap = Collections.unmodifiableSortedMap(sortedRates);
+        this.currencySet = Collections.unmodifiableSortedSet(new TreeSet<>(sortedRates.keySet()));
+    }
+
+    /**
+     * Returns the day the rates were published on, or null when they could not be loaded.
+     */
+    LocalDate getDate()
+    {
+        return date;
+    }
+
+    int getCurrencyCount()
+    {
+        return currencies.length;
+    }
+
+    String getCurrency(int index)
+    {
+        return currencies[index];
+    }
+
+    double getRate(int index)
+    {
+        return rates[index];
+    }
+
+    /**
+     * Returns the position of the currency in alphabetical order, or a negative number when it is not quoted.
+     */
+    int indexOf(String currency)
+    {
+        return Arrays.binarySearch(currencies, currency);
+    }
+
+    /**
+     * Returns the rate against the reference currency, or NaN for currencies that are not quoted.
+     */
+    double getRate(String currency)
+    {
+        int index = indexOf(currency);
+        return index < 0 ? Double.NaN : rates[index];
+    }
+
+    /**
+     * Returns a read-only view of the rates, sorted by currency.
+     */
+    Map<String, Double> asMap()
+    {
+        return rateMap;
+    }
+
+    SortedSet<String> getCurrencies()
+    {
+        return currencySet;
+    }
+}
@@ -0,0 +1,78 @@
+package com.techouse.exchangerates;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Last successfully downloaded {@link RateSnapshot}, kept so the app can start without the network.
+ * The file is plain text: the publication date on the first line, then one CURRENCY=rate line per currency.
+ */
+class RateSnapshotFile
+{
+    static final String FILE_NAME = "ExchangeRatesDB.daily";
+
+    static RateSnapshot read(Path path)
+    {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.US_ASCII)) {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("Empty snapshot");
+            }
+            LocalDate date = LocalDate.parse(line);
+
+            Map<String, Double> rates = new HashMap<>();
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf('=');
+                if (separator <= 0) {
+                    throw new IOException("Invalid snapshot line " + line);
+                }
+                rates.put(line.substring(0, separator), Double.parseDouble(line.substring(separator + 1)));
+            }
+
+            return new RateSnapshot(date, rates);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to the target and atomically moves it into place.
+     */
+    static void write(RateSnapshot snapshot, Path path) throws IOException
+    {
+        Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), FILE_NAME, ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.US_ASCII)) {
+                writer.write(snapshot.getDate().toString());
+                writer.newLine();
+                for (int i = 0; i < snapshot.getCurrencyCount(); i++) {
+                    writer.write(snapshot.getCurrency(i));
+                    writer.write('=');
+                    writer.write(Double.toString(snapshot.getRate(i)));
+                    writer.newLine();
+                }
+            }
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.techouse.exchangerates;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+interface RateSource
+{
+    /**
+     * Feeds every (date, currency, rate) cell of the source to the handler in source order.
+     */
+    void read(RateHandler handler) throws IOException, SQLException;
+}
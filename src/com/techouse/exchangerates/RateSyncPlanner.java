@@ -0,0 +1,110 @@
+package com.techouse.exchangerates;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+class RateSyncPlanner
+{
+    // the 90 day feed goes back roughly 64 business days, leave some room for holidays
+    private static final int NINETY_DAYS_COVERAGE = 85;
+
+    private final RateSource dailySource;
+    private final RateSource ninetyDaysSource;
+    private final RateSource historySource;
+
+    RateSyncPlanner()
+    {
+        this(
+            new EcbXmlRateSource(ReferenceRates.ECB_DAILY_XML_URL),
+            new EcbXmlRateSource(EcbXmlRateSource.ECB_90_DAYS_XML_URL),
+            new EcbZipRateSource(EcbZipRateSource.ECB_HISTORIC_CSV_ZIP_URL)
+        );
+    }
+
+    RateSyncPlanner(RateSource dailySource, RateSource ninetyDaysSource, RateSource historySource)
+    {
+        this.dailySource = dailySource;
+        this.ninetyDaysSource = ninetyDaysSource;
+        this.historySource = historySource;
+    }
+
+    /**
+     * Returns the sources able to fill the gap after maxDate, smallest first.
+     * The full history is always the last resort.
+     */
+    List<RateSource> plan(LocalDate maxDate, LocalDate today)
+    {
+        List<RateSource> sources = new ArrayList<>();
+
+        if (maxDate != null) {
+            // at most one business day can be missing
+            if (nextWeekday(nextWeekday(maxDate)).isAfter(today)) {
+                sources.add(dailySource);
+            }
+            if (!maxDate.isBefore(today.minusDays(NINETY_DAYS_COVERAGE))) {
+                sources.add(ninetyDaysSource);
+            }
+        }
+        sources.add(historySource);
+
+        return sources;
+    }
+
+    /**
+     * Hands every cell newer than maxDate to the handler, trying the planned sources in turn until one
+     * of them reaches back far enough to cover the whole gap. Throws when none did, after the cells that
+     * were handed over, which the caller must then discard: the sources are read newest first, so they
+     * would end behind a gap the next sync never looks at.
+     */
+    void sync(LocalDate maxDate, LocalDate today, RateHandler handler) throws IOException, SQLException
+    {
+        LocalDate firstMissingDate = maxDate == null ? null : nextWeekday(maxDate);
+        IOException failure = null;
+
+        for (RateSource source : plan(maxDate, today)) {
+            LocalDate[] earliestDate = new LocalDate[1];
+
+            try {
+                source.read((date, currency, rate) -> {
+                    if (earliestDate[0] == null || date.isBefore(earliestDate[0])) {
+                        earliestDate[0] = date;
+                    }
+                    if (maxDate == null || date.isAfter(maxDate)) {
+                        handler.handle(date, currency, rate);
+                    }
+                });
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+                continue;
+            }
+
+            if (firstMissingDate == null || (earliestDate[0] != null && !earliestDate[0].isAfter(firstMissingDate))) {
+                return;
+            }
+        }
+
+        if (failure == null) {
+            StringBuilder message = new StringBuilder("No source reaches back to ");
+            message.append(firstMissingDate);
+            failure = new IOException(message.toString());
+        }
+        throw failure;
+    }
+
+    private static LocalDate nextWeekday(LocalDate date)
+    {
+        LocalDate next = date.plusDays(1);
+        while (next.getDayOfWeek() == DayOfWeek.SATURDAY || next.getDayOfWeek() == DayOfWeek.SUNDAY) {
+            next = next.plusDays(1);
+        }
+        return next;
+    }
+}
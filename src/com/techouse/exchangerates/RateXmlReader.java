@@ -0,0 +1,64 @@
+package com.techouse.exchangerates;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Pull-parses the ECB eurofxref XML feeds (daily, 90 days and full history) in a single forward pass.
+ */
+class RateXmlReader
+{
+    private static final String NODE_NAME = "Cube";
+    private static final String DATE = "time";
+    private static final String CURRENCY = "currency";
+    private static final String RATE = "rate";
+    private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    static void read(InputStream inputStream, RateHandler handler) throws IOException, SQLException
+    {
+        XMLStreamReader reader = null;
+
+        try {
+            reader = xmlInputFactory.createXMLStreamReader(inputStream);
+            LocalDate date = null;
+
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && NODE_NAME.equals(reader.getLocalName())) {
+                    String time = reader.getAttributeValue(null, DATE);
+                    if (time != null) {
+                        date = LocalDate.parse(time, dateTimeFormatter);
+                        handler.handle(date, ReferenceRates.REFERENCE_CURRENCY, 1d);
+                    } else if (date != null) {
+                        String currency = reader.getAttributeValue(null, CURRENCY);
+                        String rate = reader.getAttributeValue(null, RATE);
+                        if (currency != null && rate != null) {
+                            handler.handle(date, currency, Double.parseDouble(rate));
+                        }
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignored) {
+                }
+            }
+        }
+    }
+}
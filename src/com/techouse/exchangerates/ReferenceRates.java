@@ -1,27 +1,74 @@
 package com.techouse.exchangerates;
 
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.sql.SQLException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
 
 class ReferenceRates
 {
     static final String REFERENCE_CURRENCY = "EUR";
     static final String ECB_DAILY_XML_URL = "https://www.ecb.europa.eu/stats/eurofxref/eurofxref-daily.xml";
-    private static final String NODE_NAME = "Cube";
-    private static final String DATE = "time";
-    private static final String CURRENCY = "currency";
-    private static final String RATE = "rate";
 
-    private static Map<String, Object> data;
-    private static SortedSet<String> currencies;
+    // readers only ever see a completely built snapshot, a refresh builds a new one and swaps it in
+    private static final AtomicReference<RateSnapshot> snapshot = new AtomicReference<>();
+
+    static RateSnapshot getSnapshot()
+    {
+        return getSnapshot(false);
+    }
+
+    /**
+     * Returns the current snapshot, or downloads a new one first when refresh is set or nothing was
+     * loaded yet. Downloads are serialised, so a slow refresh can never overwrite a newer snapshot, and
+     * a failed download keeps the rates that were there before.
+     */
+    static RateSnapshot getSnapshot(boolean refresh)
+    {
+        RateSnapshot current = getLocalSnapshot();
+        if (current != RateSnapshot.EMPTY && !refresh) {
+            return current;
+        }
+
+        synchronized (snapshot) {
+            // another thread loaded or refreshed it while this one was waiting
+            RateSnapshot latest = snapshot.get();
+            if (latest != null && latest != current) {
+                return latest;
+            }
+
+            RateSnapshot downloaded = download();
+            if (downloaded.getDate() == null && latest != null) {
+                return latest;
+            }
+            snapshot.set(downloaded);
+            return downloaded;
+        }
+    }
+
+    /**
+     * Returns the snapshot in memory, or else the one saved by the last successful download, or else
+     * {@link RateSnapshot#EMPTY}. Never touches the network.
+     */
+    static RateSnapshot getLocalSnapshot()
+    {
+        RateSnapshot current = snapshot.get();
+        if (current != null) {
+            return current;
+        }
+
+        RateSnapshot persisted = RateSnapshotFile.read(getSnapshotPath());
+        if (persisted == null) {
+            return RateSnapshot.EMPTY;
+        }
+        snapshot.compareAndSet(null, persisted);
+        return snapshot.get();
+    }
 
     static Map<String, Double> getRates()
     {
@@ -30,58 +77,47 @@ class ReferenceRates
 
     static Map<String, Double> getRates(boolean refresh)
     {
-        if (refresh || data == null) {
-            data = ReferenceRates.getReferenceRates();
-        }
-        return (Map<String, Double>) data.get("rates");
+        return getSnapshot(refresh).asMap();
     }
 
     static SortedSet<String> getCurrencies()
     {
-        if (currencies == null) {
-            currencies = new TreeSet<>(getRates().keySet());
-        }
-        return currencies;
+        return getSnapshot().getCurrencies();
     }
 
     static LocalDate getDate()
     {
-        if (data == null) {
-            data = ReferenceRates.getReferenceRates();
-        }
-        return (LocalDate) data.get("date");
+        return getSnapshot().getDate();
     }
 
-    static Map<String, Object> getReferenceRates()
+    private static RateSnapshot download()
     {
-        Map<String, Object> data = new HashMap<>();
-        Map<String, Double> rates = new HashMap<String, Double>()
-        {{
-            put(REFERENCE_CURRENCY, 1d);
-        }};
-        NodeList nodeList = GetDataFromUrl
-            .getDocument(ECB_DAILY_XML_URL)
-            .getElementsByTagName(NODE_NAME);
-
-        DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            Node node = nodeList.item(i);
-            if (node.getNodeType() == Node.ELEMENT_NODE) {
-                Element element = (Element) node;
-                if (element.hasAttribute(DATE)) {
-                    data.put("date", LocalDate.parse(element.getAttribute(DATE), dateFormat));
-                } else if (element.hasAttribute(CURRENCY) && element.hasAttribute(RATE)) {
-                    rates.put(
-                        element.getAttribute(CURRENCY),
-                        Double.parseDouble(element.getAttribute(RATE))
-                    );
-                }
-            }
+        Map<String, Double> rates = new HashMap<>();
+        LocalDate[] date = new LocalDate[1];
+
+        try (InputStream inputStream = GetDataFromUrl.getInputStream(ECB_DAILY_XML_URL)) {
+            RateXmlReader.read(inputStream, (day, currency, rate) -> {
+                date[0] = day;
+                rates.put(currency, rate);
+            });
+        } catch (IOException | SQLException e) {
+            e.printStackTrace();
         }
+        rates.put(REFERENCE_CURRENCY, 1d);
 
-        data.put("rates", rates);
+        RateSnapshot downloaded = new RateSnapshot(date[0], rates);
+        if (downloaded.getDate() != null) {
+            try {
+                RateSnapshotFile.write(downloaded, getSnapshotPath());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return downloaded;
+    }
 
-        return data;
+    private static Path getSnapshotPath()
+    {
+        return Database.getDirectory().resolve(RateSnapshotFile.FILE_NAME);
     }
 }
@@ -0,0 +1,149 @@
+package com.techouse.exchangerates;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the rates current in the background. It sleeps until shortly after the next publication is due
+ * according to the {@link EcbCalendar}, then polls with exponential backoff until the new day has
+ * arrived, and tells its listeners about it. While the rates are current nothing is polled. All times
+ * come from the given clock, so the schedule can be computed for any moment with a fixed clock.
+ */
+class RefreshScheduler
+{
+    interface Listener
+    {
+        void ratesUpdated(LocalDate latestDay);
+    }
+
+    // the rates are usually out a few minutes after the nominal publication time
+    static final Duration PUBLICATION_DELAY = Duration.ofMinutes(5);
+    static final Duration INITIAL_BACKOFF = Duration.ofMinutes(1);
+    static final Duration MAX_BACKOFF = Duration.ofMinutes(30);
+    // wake up at least this often to notice clock changes and system sleep, without polling
+    static final Duration MAX_SLEEP = Duration.ofHours(1);
+
+    private final Clock clock;
+    private final Supplier<LocalDate> latestDay;
+    private final Callable<LocalDate> update;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService executor;
+    private Instant lastPoll;
+    private int failedPolls = 0;
+
+    /**
+     * latestDay returns the newest day available locally, update fetches whatever was published since
+     * and returns the newest day available afterwards.
+     */
+    RefreshScheduler(Clock clock, Supplier<LocalDate> latestDay, Callable<LocalDate> update)
+    {
+        this.clock = clock;
+        this.latestDay = latestDay;
+        this.update = update;
+    }
+
+    void addListener(Listener listener)
+    {
+        listeners.add(listener);
+    }
+
+    synchronized void start()
+    {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ecb-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.execute(this::check);
+        }
+    }
+
+    /**
+     * Returns when to check next, given the newest local day, the time the last poll finished and the number
+     * of polls since the rates became due that did not bring them.
+     */
+    Instant getNextCheck(LocalDate latestDay, Instant lastPoll, int failedPolls)
+    {
+        Instant now = clock.instant();
+        LocalDate dueDay = getDueDay(now);
+
+        if (latestDay != null && !latestDay.isBefore(dueDay)) {
+            LocalDate nextDay = EcbCalendar.nextPublicationDay(dueDay);
+            return EcbCalendar.getPublicationTime(nextDay).toInstant().plus(PUBLICATION_DELAY);
+        }
+        if (failedPolls == 0 || lastPoll == null) {
+            return now;
+        }
+        Duration backoff = INITIAL_BACKOFF.multipliedBy(1L << Math.min(failedPolls - 1, 16));
+        return lastPoll.plus(backoff.compareTo(MAX_BACKOFF) < 0 ? backoff : MAX_BACKOFF);
+    }
+
+    /**
+     * Returns the newest day whose rates should be out at the given instant.
+     */
+    static LocalDate getDueDay(Instant now)
+    {
+        return EcbCalendar.latestPublicationDay(now.minus(PUBLICATION_DELAY));
+    }
+
+    /**
+     * Polls when due and schedules the next check. The executor drops whatever a task throws, so every
+     * failure is logged here and the next check is scheduled no matter what.
+     */
+    private void check()
+    {
+        Duration delay = INITIAL_BACKOFF;
+
+        try {
+            LocalDate known = latestDay.get();
+
+            if (!getNextCheck(known, lastPoll, failedPolls).isAfter(clock.instant())) {
+                failedPolls++;
+
+                LocalDate updated = null;
+                try {
+                    updated = update.call();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                // the backoff counts from the end of the download, a slow one must not eat up the wait
+                lastPoll = clock.instant();
+
+                if (updated != null && (known == null || updated.isAfter(known))) {
+                    known = updated;
+                    for (Listener listener : listeners) {
+                        try {
+                            listener.ratesUpdated(updated);
+                        } catch (RuntimeException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            }
+
+            if (known != null && !known.isBefore(getDueDay(clock.instant()))) {
+                // caught up, the next publication starts a new round of polls
+                failedPolls = 0;
+            }
+            delay = Duration.between(clock.instant(), getNextCheck(known, lastPoll, failedPolls));
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            schedule(delay);
+        }
+    }
+
+    private synchronized void schedule(Duration delay)
+    {
+        if (executor != null) {
+            long millis = Math.max(0, Math.min(delay.toMillis(), MAX_SLEEP.toMillis()));
+            executor.schedule(this::check, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.techouse.exchangerates;
+
+import java.util.Arrays;
+
+/**
+ * Streaming technical indicators over a window of calendar days. Every point is added once and all
+ * indicators are updated in O(1) amortised: running sums for the averages and the standard deviation,
+ * monotonic deques for the rolling minimum and maximum. New days can be appended at any time without
+ * recomputing the history.
+ */
+class RollingIndicators
+{
+    enum Indicator
+    {
+        SMA("%d DAY AVG"),
+        EMA("%d DAY EMA"),
+        BOLLINGER_UPPER("BOLLINGER UPPER"),
+        BOLLINGER_LOWER("BOLLINGER LOWER"),
+        MIN("%d DAY MIN"),
+        MAX("%d DAY MAX");
+
+        private final String title;
+
+        Indicator(String title)
+        {
+            this.title = title;
+        }
+
+        String getTitle(int days)
+        {
+            return String.format(title, days);
+        }
+    }
+
+    private static final double BOLLINGER_WIDTH = 2d;
+
+    private final int days;
+    private final double emaAlpha;
+    private int[] epochDays = new int[256];
+    private double[] values = new double[256];
+    private double[][] outputs = new double[Indicator.values().length][256];
+    private int size = 0;
+
+    private int windowStart = 0;
+    private double sum = 0;
+    private double sumOfSquares = 0;
+    private double ema = Double.NaN;
+    // indices of the points whose values increase (min) and decrease (max) from head to tail,
+    // every index is pushed at most once so the deques never need more room than the points
+    private int[] minDeque = new int[256];
+    private int[] maxDeque = new int[256];
+    private int minHead = 0, minTail = 0, maxHead = 0, maxTail = 0;
+
+    /**
+     * Every point is combined with the points of the preceding days - 1 calendar days, the exponential
+     * average uses the usual smoothing factor of 2 / (days + 1) per published point.
+     */
+    RollingIndicators(int days)
+    {
+        if (days < 1) {
+            throw new IllegalArgumentException("The window must span at least one day.");
+        }
+        this.days = days;
+        this.emaAlpha = 2d / (days + 1);
+    }
+
+    RollingIndicators(int days, RateSeries series)
+    {
+        this(days);
+        addAll(series);
+    }
+
+    int getDays()
+    {
+        return days;
+    }
+
+    int getLastEpochDay()
+    {
+        return size == 0 ? Integer.MIN_VALUE : epochDays[size - 1];
+    }
+
+    /**
+     * Adds the points of the series that are newer than the last point added so far.
+     */
+    void addAll(RateSeries series)
+    {
+        for (int i = series.lowerBound((long) getLastEpochDay() + 1); i < series.size(); i++) {
+            add(series.getEpochDay(i), series.getValue(i));
+        }
+    }
+
+    void add(int epochDay, double value)
+    {
+        if (size > 0 && epochDay <= epochDays[size - 1]) {
+            throw new IllegalArgumentException("Points must be added in ascending order of their days.");
+        }
+        ensureCapacity(size + 1);
+        int index = size++;
+        epochDays[index] = epochDay;
+        values[index] = value;
+
+        sum += value;
+        sumOfSquares += value * value;
+        while (epochDays[windowStart] <= epochDay - days) {
+            double expired = values[windowStart++];
+            sum -= expired;
+            sumOfSquares -= expired * expired;
+        }
+        int count = index - windowStart + 1;
+
+        while (minTail > minHead && values[minDeque[minTail - 1]] >= value) {
+            minTail--;
+        }
+        minDeque[minTail++] = index;
+        while (minDeque[minHead] < windowStart) {
+            minHead++;
+        }
+
+        while (maxTail > maxHead && values[maxDeque[maxTail - 1]] <= value) {
+            maxTail--;
+        }
+        maxDeque[maxTail++] = index;
+        while (maxDeque[maxHead] < windowStart) {
+            maxHead++;
+        }
+
+        ema = Double.isNaN(ema) ? value : ema + emaAlpha * (value - ema);
+
+        double average = sum / count;
+        double deviation = Math.sqrt(Math.max(sumOfSquares / count - average * average, 0));
+        outputs[Indicator.SMA.ordinal()][index] = average;
+        outputs[Indicator.EMA.ordinal()][index] = ema;
+        outputs[Indicator.BOLLINGER_UPPER.ordinal()][index] = average + BOLLINGER_WIDTH * deviation;
+        outputs[Indicator.BOLLINGER_LOWER.ordinal()][index] = average - BOLLINGER_WIDTH * deviation;
+        outputs[Indicator.MIN.ordinal()][index] = values[minDeque[minHead]];
+        outputs[Indicator.MAX.ordinal()][index] = values[maxDeque[maxHead]];
+    }
+
+    /**
+     * Returns the indicator from the first point that has a full window, which is days after the
+     * first point, like JFreeChart's MovingAverage with the same period count and skip.
+     */
+    RateSeries getSeries(Indicator indicator)
+    {
+        if (size == 0) {
+            return RateSeries.EMPTY;
+        }
+        int start = Arrays.binarySearch(epochDays, 0, size, epochDays[0] + days);
+        if (start < 0) {
+            start = -start - 1;
+        }
+        return new RateSeries(
+            Arrays.copyOfRange(epochDays, start, size),
+            Arrays.copyOfRange(outputs[indicator.ordinal()], start, size)
+        );
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > epochDays.length) {
+            int length = Math.max(capacity, epochDays.length * 2);
+            epochDays = Arrays.copyOf(epochDays, length);
+            values = Arrays.copyOf(values, length);
+            minDeque = Arrays.copyOf(minDeque, length);
+            maxDeque = Arrays.copyOf(maxDeque, length);
+            for (int i = 0; i < outputs.length; i++) {
+                outputs[i] = Arrays.copyOf(outputs[i], length);
+            }
+        }
+    }
+}
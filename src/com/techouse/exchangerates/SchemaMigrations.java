@@ -0,0 +1,85 @@
+package com.techouse.exchangerates;
+
+import java.sql.*;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Brings the database schema up to the latest version recorded in SCHEMA_VERSION. Migrations are
+ * only ever appended, never edited. HSQLDB commits DDL implicitly, so every statement must be safe
+ * to run again after a migration was interrupted.
+ */
+class SchemaMigrations
+{
+    private static final String VERSION_TABLE = "SCHEMA_VERSION";
+    private static final String TABLE_NAME = HistoricReferenceRates.TABLE_NAME;
+
+    private static final List<String[]> MIGRATIONS = Arrays.asList(
+        // 1: the original layout, installations from before versioning already have it
+        new String[]{
+            "CREATE CACHED TABLE IF NOT EXISTS " + TABLE_NAME + " ("
+                + "date DATE NOT NULL, "
+                + "currency CHAR(3) NOT NULL, "
+                + "value DOUBLE DEFAULT 0 NOT NULL, "
+                + "PRIMARY KEY (date, currency)"
+                + ")",
+            "CREATE INDEX IF NOT EXISTS currency ON " + TABLE_NAME + " (currency)"
+        },
+        // 2: per-currency lookups are ordered by date, which the single column index could not serve
+        new String[]{
+            "CREATE INDEX IF NOT EXISTS rates_currency_date ON " + TABLE_NAME + " (currency, date)",
+            "DROP INDEX currency IF EXISTS"
+        }
+    );
+
+    static synchronized void migrate(Connection connection) throws SQLException
+    {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+
+        try (Statement statement = connection.createStatement()) {
+            StringBuilder sql = new StringBuilder("CREATE TABLE IF NOT EXISTS ");
+            sql.append(VERSION_TABLE);
+            sql.append(" (version INTEGER NOT NULL PRIMARY KEY, applied_at TIMESTAMP NOT NULL)");
+            statement.execute(sql.toString());
+            connection.commit();
+
+            int version = getVersion(statement);
+            if (version >= MIGRATIONS.size()) {
+                return;
+            }
+
+            sql = new StringBuilder("INSERT INTO ");
+            sql.append(VERSION_TABLE);
+            sql.append(" (version, applied_at) VALUES (?, CURRENT_TIMESTAMP)");
+
+            try (PreparedStatement insert = connection.prepareStatement(sql.toString())) {
+                for (int next = version + 1; next <= MIGRATIONS.size(); next++) {
+                    for (String ddl : MIGRATIONS.get(next - 1)) {
+                        statement.execute(ddl);
+                    }
+                    insert.setInt(1, next);
+                    insert.executeUpdate();
+                    connection.commit();
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                Database.schemaChanged();
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static int getVersion(Statement statement) throws SQLException
+    {
+        StringBuilder sql = new StringBuilder("SELECT MAX(version) AS version FROM ");
+        sql.append(VERSION_TABLE);
+
+        try (ResultSet resultSet = statement.executeQuery(sql.toString())) {
+            return resultSet.next() ? resultSet.getInt("version") : 0;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.techouse.exchangerates;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.DoubleBuffer;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Converts records with signs, more decimals than the fixed-point path takes and amounts past the range
+ * of a long, behind a header with and without a byte order mark and between empty lines, against two
+ * days of made-up rates. Then converts a large random file with one and with several threads, which must
+ * give the same output. Fails with an AssertionError showing the first record converted wrongly.
+ * <pre>
+ * java -cp out:lib/* com.techouse.exchangerates.BulkConverterTest
+ * </pre>
+ */
+public class BulkConverterTest
+{
+    private static final String NL = System.lineSeparator();
+    private static final String[] CURRENCIES = {"GBP", "JPY", "USD"};
+    private static final LocalDate THURSDAY = LocalDate.of(2024, 6, 27);
+    private static final LocalDate FRIDAY = LocalDate.of(2024, 6, 28);
+    // JPY is not quoted on Thursday
+    private static final RateMatrix RATES = new RateMatrix(
+        CURRENCIES,
+        new int[]{(int) THURSDAY.toEpochDay(), (int) FRIDAY.toEpochDay()},
+        DoubleBuffer.wrap(new double[]{0.85, Double.NaN, 1.2, 0.8, 170.5, 1.25}),
+        CURRENCIES.length, 0
+    );
+    private static int checks = 0;
+
+    public static void main(String[] args) throws IOException
+    {
+        records();
+        headers();
+        threads();
+
+        System.out.println("OK " + checks + " checks");
+    }
+
+    private static void records() throws IOException
+    {
+        // signs, and rounding half away from zero on both sides
+        check("2024-06-28,1250.00,USD,GBP", "0.640000,800.0000");
+        check("2024-06-28,-1250.00,USD,GBP", "0.640000,-800.0000");
+        check("2024-06-28,+1250.00,USD,GBP", "0.640000,800.0000");
+        check("2024-06-28,-0.00005,EUR,EUR", "1.000000,-0.0001");
+        check("2024-06-28,+0.00005,EUR,EUR", "1.000000,0.0001");
+        check("2024-06-28, 100 ,usd,gbp", "0.640000,64.0000");
+
+        // more than 6 decimals and past the range of a long take the BigDecimal fallback
+        check("2024-06-28,1.0000001,EUR,USD", "1.250000,1.2500");
+        check("2024-06-28,-0.12345678,GBP,JPY", "213.125000,-26.3117");
+        check("2024-06-28,99999999999999999999.5,EUR,USD", "1.250000,124999999999999999999.3750");
+        check("2024-06-28,-99999999999999999999.5,EUR,USD", "1.250000,-124999999999999999999.3750");
+        // fits a fixed-point long, but the product does not
+        check("2024-06-28,9223372036854.775807,EUR,USD", "1.250000,11529215046068.4698");
+
+        // Thursday's rates, and Friday's carried over the weekend
+        check("2024-06-27,100,USD,GBP", "0.708333,70.8333");
+        check("2024-06-29,100,USD,EUR", "0.800000,80.0000");
+
+        // no rate, or not a record
+        check("2024-06-27,100,JPY,EUR", ",");
+        check("2024-06-26,100,USD,EUR", ",");
+        check("2024-06-28,100,XXX,EUR", ",");
+        check("2024-06-28,abc,USD,EUR", ",");
+        check("2024-06-28,,USD,EUR", ",");
+        check("2024-06-28,1.2.3,USD,EUR", ",");
+        check("2024-06-28,-,USD,EUR", ",");
+        check("2024-06-28,1e3,USD,EUR", ",");
+        check("2024-6-28,100,USD,EUR", ",");
+        check("2024-06-28,100,USD", ",");
+    }
+
+    private static void headers() throws IOException
+    {
+        String records = "2024-06-28,1250.00,USD,GBP" + NL + NL + "2024-06-28,100,XXX,EUR" + NL + NL;
+        String converted = "2024-06-28,1250.00,USD,GBP,0.640000,800.0000" + NL + "2024-06-28,100,XXX,EUR,," + NL;
+        String header = "date,amount,from,to,rate,converted_amount" + NL;
+
+        checkConversion("without a header", records, converted, 2, 1);
+        checkConversion("header", "date,amount,from,to" + NL + records, header + converted, 2, 1);
+        checkConversion("byte order mark", "\uFEFFdate,amount,from,to" + NL + records, header + converted, 2, 1);
+        checkConversion("byte order mark without a header", "\uFEFF" + records, converted, 2, 1);
+        checkConversion("leading empty line", NL + records, converted, 2, 1);
+        checkConversion("empty file", "", "", 0, 0);
+    }
+
+    /**
+     * Chunks are converted in any order on several threads, but written in the order they were read.
+     */
+    private static void threads() throws IOException
+    {
+        Random random = new Random(20240628);
+        String[] currencies = {"EUR", "GBP", "JPY", "USD", "XXX"};
+        StringBuilder input = new StringBuilder("date,amount,from,to").append(NL);
+        for (int i = 0; i < 100_000; i++) {
+            input.append(THURSDAY.plusDays(random.nextInt(5) - 1));
+            input.append(',');
+            input.append(random.nextBoolean() ? "-" : "");
+            input.append(random.nextInt(1_000_000));
+            input.append('.');
+            input.append(random.nextInt(100_000_000));
+            input.append(',');
+            input.append(currencies[random.nextInt(currencies.length)]);
+            input.append(',');
+            input.append(currencies[random.nextInt(currencies.length)]);
+            input.append(NL);
+            if (random.nextInt(100) == 0) {
+                input.append(NL);
+            }
+        }
+
+        StringWriter expected = new StringWriter();
+        BulkConverter.Summary summary = new BulkConverter(1, 1000).convert(new StringReader(input.toString()), expected, RATES);
+        check(summary.records == 100_000, "records of one thread", summary.records);
+
+        int[][] settings = {{4, 1000}, {8, 7}, {3, BulkConverter.DEFAULT_CHUNK_SIZE}};
+        for (int[] setting : settings) {
+            StringWriter output = new StringWriter();
+            BulkConverter.Summary threaded = new BulkConverter(setting[0], setting[1]).convert(
+                new StringReader(input.toString()), output, RATES
+            );
+            String what = setting[0] + " threads, chunks of " + setting[1];
+            check(output.toString().equals(expected.toString()), what + " write what one thread writes", firstDifference(output.toString(), expected.toString()));
+            check(threaded.records == summary.records && threaded.unconverted == summary.unconverted, what + " count what one thread counts", threaded.unconverted);
+        }
+    }
+
+    private static void check(String record, String appended) throws IOException
+    {
+        checkConversion(record, record + NL, record + "," + appended + NL, 1, appended.equals(",") ? 1 : 0);
+    }
+
+    private static void checkConversion(String what, String input, String expected, long records, long unconverted) throws IOException
+    {
+        StringWriter output = new StringWriter();
+        BulkConverter.Summary summary = new BulkConverter(2, 2).convert(new StringReader(input), output, RATES);
+        check(output.toString().equals(expected), what, output.toString().trim());
+        check(summary.records == records && summary.unconverted == unconverted, what + ": counts", summary.records + " records, " + summary.unconverted + " without a rate");
+    }
+
+    private static String firstDifference(String actual, String expected)
+    {
+        int at = 0;
+        while (at < actual.length() && at < expected.length() && actual.charAt(at) == expected.charAt(at)) {
+            at++;
+        }
+        int lineStart = actual.lastIndexOf('\n', at) + 1;
+        int lineEnd = actual.indexOf('\n', at);
+        return actual.substring(lineStart, lineEnd < 0 ? actual.length() : lineEnd).trim();
+    }
+
+    private static void check(boolean passed, String what, Object actual)
+    {
+        checks++;
+        if (!passed) {
+            throw new AssertionError(what + ": got " + actual);
+        }
+    }
+}
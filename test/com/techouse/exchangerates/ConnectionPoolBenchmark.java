@@ -0,0 +1,147 @@
+package com.techouse.exchangerates;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.LocalDate;
+
+/**
+ * Per-query latency of the MAX(date) lookup HistoricReferenceRates runs, on a file database with the
+ * real schema. Each iteration gets a connection, checks that the table exists, runs the query and
+ * closes the connection: once on a raw JDBCDataSource with a metadata query and a freshly prepared
+ * statement as before the pool, once through ConnectionPool with the cached statement and table check.
+ * <pre>
+ * java -cp out:lib/* com.techouse.exchangerates.ConnectionPoolBenchmark [ITERATIONS]
+ * </pre>
+ */
+public class ConnectionPoolBenchmark
+{
+    private static final String MAX_DATE_SQL = "SELECT MAX(date) AS max_date FROM " + HistoricReferenceRates.TABLE_NAME;
+    private static final String[] CURRENCIES = {
+        "AUD", "CAD", "CHF", "CNY", "GBP", "JPY", "NOK", "SEK", "USD", "ZAR"
+    };
+
+    public static void main(String[] args) throws Exception
+    {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        Path directory = Files.createTempDirectory("pool-benchmark");
+
+        try {
+            JDBCDataSource dataSource = new JDBCDataSource();
+            dataSource.setURL("jdbc:hsqldb:file:" + directory.resolve("bench"));
+            dataSource.setUser("SA");
+            dataSource.setPassword("");
+
+            // keeps the database open between the raw connections below, as the running app does
+            try (Connection keepOpen = dataSource.getConnection()) {
+                fill(keepOpen);
+
+                DataSource pool = new ConnectionPool(dataSource);
+                LocalDate raw = null;
+                LocalDate pooled = null;
+                for (int warmUp = 0; warmUp < 2; warmUp++) {
+                    raw = maxDateRaw(dataSource);
+                    pooled = maxDatePooled(pool);
+                }
+                if (!raw.equals(pooled)) {
+                    throw new AssertionError("Raw read " + raw + ", pooled read " + pooled);
+                }
+
+                report("raw JDBCDataSource + metadata query", time(iterations, () -> maxDateRaw(dataSource)));
+                report("pooled + cached statement/schema", time(iterations, () -> maxDatePooled(pool)));
+
+                try (Statement statement = keepOpen.createStatement()) {
+                    statement.execute("SHUTDOWN");
+                }
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private interface Query
+    {
+        LocalDate run() throws SQLException;
+    }
+
+    private static double time(int iterations, Query query) throws SQLException
+    {
+        for (int i = 0; i < iterations / 10; i++) {
+            query.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            query.run();
+        }
+        return (System.nanoTime() - start) / 1e3 / iterations;
+    }
+
+    private static void report(String name, double microseconds)
+    {
+        System.out.println(String.format("%-36s %8.1f us per query", name, microseconds));
+    }
+
+    /**
+     * The lookup as it was before the pool: a new connection, a metadata query and a new statement.
+     */
+    private static LocalDate maxDateRaw(DataSource dataSource) throws SQLException
+    {
+        try (Connection connection = dataSource.getConnection()) {
+            try (ResultSet tables = connection.getMetaData().getTables(null, null, HistoricReferenceRates.TABLE_NAME, null)) {
+                if (!tables.next()) {
+                    return null;
+                }
+            }
+            try (
+                PreparedStatement statement = connection.prepareStatement(MAX_DATE_SQL);
+                ResultSet resultSet = statement.executeQuery()
+            ) {
+                return resultSet.next() ? resultSet.getDate("max_date").toLocalDate() : null;
+            }
+        }
+    }
+
+    private static LocalDate maxDatePooled(DataSource pool) throws SQLException
+    {
+        try (Connection connection = pool.getConnection()) {
+            if (!Database.tableExists(connection, HistoricReferenceRates.TABLE_NAME)) {
+                return null;
+            }
+            try (
+                PreparedStatement statement = connection.prepareStatement(MAX_DATE_SQL);
+                ResultSet resultSet = statement.executeQuery()
+            ) {
+                return resultSet.next() ? resultSet.getDate("max_date").toLocalDate() : null;
+            }
+        }
+    }
+
+    private static void fill(Connection connection) throws SQLException
+    {
+        SchemaMigrations.migrate(connection);
+
+        try (RateBatchWriter writer = new RateBatchWriter(
+            connection, HistoricReferenceRates.TABLE_NAME, false,
+            RateBatchWriter.DEFAULT_BATCH_SIZE, RateBatchWriter.DEFAULT_COMMIT_INTERVAL
+        )) {
+            LocalDate date = LocalDate.of(1999, 1, 4);
+            for (int day = 0; day < 18000; day++, date = date.plusDays(1)) {
+                for (int i = 0; i < CURRENCIES.length; i++) {
+                    writer.write(date, CURRENCIES[i], 1 + i + day / 1e4);
+                }
+            }
+        }
+        connection.setAutoCommit(true);
+    }
+
+    private static void delete(Path directory) throws IOException
+    {
+        try (java.util.stream.Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(java.util.Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
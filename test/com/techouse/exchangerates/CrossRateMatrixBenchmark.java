@@ -0,0 +1,69 @@
+package com.techouse.exchangerates;
+
+import java.util.Map;
+
+/**
+ * Time to answer a currency selection, all cross rates of one base, with the per-pair computation
+ * GetExchangeRate used before CrossRateMatrix, with a matrix already built for the snapshot, with the
+ * single row computed for a snapshot asked once, and the one-off cost of building the whole matrix.
+ * <pre>
+ * java -cp out:lib/* com.techouse.exchangerates.CrossRateMatrixBenchmark [ROUNDS]
+ * </pre>
+ */
+public class CrossRateMatrixBenchmark
+{
+    public static void main(String[] args)
+    {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        RateSnapshot snapshot = new RateSnapshot(null, CrossRateMatrixTest.referenceRates());
+        String[] bases = snapshot.getCurrencies().toArray(new String[snapshot.getCurrencyCount()]);
+        long sink = 0;
+
+        // warm up every path before timing it
+        for (int round = 0; round < rounds; round++) {
+            for (String base : bases) {
+                sink += CrossRateMatrixTest.calculateRatesBefore(snapshot.asMap(), base).size();
+                sink += new CrossRateMatrix(snapshot).getRates(base).size();
+                sink += CrossRateMatrix.calculateRates(snapshot, base).size();
+            }
+        }
+
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String base : bases) {
+                sink += CrossRateMatrixTest.calculateRatesBefore(snapshot.asMap(), base).size();
+            }
+        }
+        double before = (System.nanoTime() - start) / 1e3 / rounds / bases.length;
+
+        CrossRateMatrix matrix = new CrossRateMatrix(snapshot);
+        start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String base : bases) {
+                Map<String, Double> rates = matrix.getRates(base);
+                sink += rates.size();
+            }
+        }
+        double lookup = (System.nanoTime() - start) / 1e3 / rounds / bases.length;
+
+        start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String base : bases) {
+                sink += CrossRateMatrix.calculateRates(snapshot, base).size();
+            }
+        }
+        double row = (System.nanoTime() - start) / 1e3 / rounds / bases.length;
+
+        start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            sink += new CrossRateMatrix(snapshot).getRate(bases[0], bases[1]) > 0 ? 1 : 0;
+        }
+        double build = (System.nanoTime() - start) / 1e3 / rounds;
+
+        System.out.println(String.format("%d currencies, %d rounds (checksum %d)", bases.length, rounds, sink));
+        System.out.println(String.format("%-32s %8.2f us per selection", "per-pair BigDecimal + format", before));
+        System.out.println(String.format("%-32s %8.2f us per selection", "CrossRateMatrix lookup", lookup));
+        System.out.println(String.format("%-32s %8.2f us per selection", "CrossRateMatrix single row", row));
+        System.out.println(String.format("%-32s %8.2f us per snapshot", "CrossRateMatrix build", build));
+    }
+}
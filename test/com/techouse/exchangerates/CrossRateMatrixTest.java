@@ -0,0 +1,147 @@
+package com.techouse.exchangerates;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.*;
+
+/**
+ * Checks every cell of CrossRateMatrix, and every row computed on its own, against the per-pair BigDecimal and DecimalFormat computation
+ * GetExchangeRate used before it, on the reference rates of one ECB publication and on random snapshots
+ * spanning the magnitudes the ECB quotes. Fails with an AssertionError naming the first differing cell.
+ * <pre>
+ * java -cp out:lib/* com.techouse.exchangerates.CrossRateMatrixTest [RANDOM_SNAPSHOTS]
+ * </pre>
+ */
+public class CrossRateMatrixTest
+{
+    // the reference rates published on 13 April 2017
+    static final String[] CURRENCIES = {
+        "AUD", "BGN", "BRL", "CAD", "CHF", "CNY", "CZK", "DKK", "GBP", "HKD", "HRK", "HUF", "IDR", "ILS",
+        "INR", "JPY", "KRW", "MXN", "MYR", "NOK", "NZD", "PHP", "PLN", "RON", "RUB", "SEK", "SGD", "THB",
+        "TRY", "USD", "ZAR"
+    };
+    static final double[] RATES = {
+        1.4046, 1.9558, 3.3404, 1.4143, 1.0679, 7.3262, 26.563, 7.4376, 0.84908, 8.2629, 7.458, 313.27,
+        14110.17, 3.8875, 68.578, 115.68, 1210.72, 19.846, 4.6976, 9.1365, 1.5095, 52.87, 4.2163, 4.54,
+        59.8291, 9.617, 1.4868, 36.658, 3.9443, 1.063, 14.4345
+    };
+
+    public static void main(String[] args)
+    {
+        int randomSnapshots = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long cells = check(new RateSnapshot(null, referenceRates()));
+
+        Random random = new Random(20170413);
+        for (int i = 0; i < randomSnapshots; i++) {
+            cells += check(new RateSnapshot(null, randomRates(random)));
+        }
+
+        System.out.println("OK " + cells + " cells match the per-pair computation");
+    }
+
+    static Map<String, Double> referenceRates()
+    {
+        Map<String, Double> rates = new HashMap<>();
+        for (int i = 0; i < CURRENCIES.length; i++) {
+            rates.put(CURRENCIES[i], RATES[i]);
+        }
+        rates.put(ReferenceRates.REFERENCE_CURRENCY, 1d);
+        return rates;
+    }
+
+    /**
+     * Rates with five significant digits like the ECB's, from about 0.1 to about 50,000.
+     */
+    static Map<String, Double> randomRates(Random random)
+    {
+        Map<String, Double> rates = new HashMap<>();
+        for (String currency : CURRENCIES) {
+            double magnitude = Math.pow(10, random.nextInt(6) - 1);
+            double digits = 10000 + random.nextInt(90000);
+            rates.put(currency, new BigDecimal(digits * magnitude / 10000).round(new java.math.MathContext(5)).doubleValue());
+        }
+        rates.put(ReferenceRates.REFERENCE_CURRENCY, 1d);
+        return rates;
+    }
+
+    private static long check(RateSnapshot snapshot)
+    {
+        CrossRateMatrix matrix = new CrossRateMatrix(snapshot);
+        long cells = 0;
+
+        for (String base : snapshot.getCurrencies()) {
+            Map<String, Double> expected = calculateRatesBefore(snapshot.asMap(), base);
+            Map<String, Double> actual = matrix.getRates(base);
+
+            if (!actual.equals(CrossRateMatrix.calculateRates(snapshot, base))) {
+                throw new AssertionError("Base " + base + ": the single row differs from the matrix row");
+            }
+            if (!expected.keySet().equals(actual.keySet())) {
+                throw new AssertionError("Base " + base + ": quotes " + actual.keySet() + ", expected " + expected.keySet());
+            }
+            for (Map.Entry<String, Double> quote : expected.entrySet()) {
+                double value = actual.get(quote.getKey());
+                if (Double.compare(value, quote.getValue()) != 0 || value != matrix.getRate(base, quote.getKey())) {
+                    StringBuilder message = new StringBuilder("1 ");
+                    message.append(base);
+                    message.append(" = ");
+                    message.append(value);
+                    message.append(' ');
+                    message.append(quote.getKey());
+                    message.append(", expected ");
+                    message.append(quote.getValue());
+                    message.append(" from rates ");
+                    message.append(snapshot.asMap());
+                    throw new AssertionError(message.toString());
+                }
+                cells++;
+            }
+        }
+
+        return cells;
+    }
+
+    /**
+     * GetExchangeRate.calculateRates as it was before CrossRateMatrix, on the given reference rates.
+     */
+    static Map<String, Double> calculateRatesBefore(Map<String, Double> referenceRates, String currency)
+    {
+        Map<String, Double> calculatedRates = new HashMap<>();
+
+        DecimalFormat decimalFormat0 = new DecimalFormat("#.#####", new DecimalFormatSymbols(Locale.US));
+        decimalFormat0.setRoundingMode(RoundingMode.HALF_UP);
+
+        DecimalFormat decimalFormat1 = new DecimalFormat("#.####", new DecimalFormatSymbols(Locale.US));
+        decimalFormat1.setRoundingMode(RoundingMode.HALF_UP);
+
+        DecimalFormat decimalFormat100 = new DecimalFormat("#.##", new DecimalFormatSymbols(Locale.US));
+        decimalFormat100.setRoundingMode(RoundingMode.HALF_UP);
+
+        if (!currency.equals(ReferenceRates.REFERENCE_CURRENCY)) {
+            Double currencyRate = referenceRates.get(currency);
+
+            for (Map.Entry<String, Double> referenceRate : referenceRates.entrySet()) {
+                BigDecimal value = new BigDecimal(Double.toString(referenceRate.getValue()));
+                value = value.divide(new BigDecimal(currencyRate.toString()), 4, RoundingMode.HALF_UP);
+                value = value.setScale(4, RoundingMode.HALF_UP);
+                Double calculatedRate = value.doubleValue();
+
+                if (calculatedRate < 1) {
+                    calculatedRate = Double.parseDouble(decimalFormat0.format(calculatedRate));
+                } else if (calculatedRate < 100 && calculatedRate >= 1) {
+                    calculatedRate = Double.parseDouble(decimalFormat1.format(calculatedRate));
+                } else {
+                    calculatedRate = Double.parseDouble(decimalFormat100.format(calculatedRate));
+                }
+
+                calculatedRates.put(referenceRate.getKey(), calculatedRate);
+            }
+
+            return calculatedRates;
+        } else {
+            return referenceRates;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.techouse.exchangerates;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Reads generated history ZIPs through EcbZipRateSource, a valid one and ones whose parser or handler
+ * fails early, late and with a full queue. Every read must end, with the rows or with an exception,
+ * within a few seconds. Fails with an AssertionError naming the case that hung or ended wrongly.
+ * <pre>
+ * java -cp out:lib/* com.techouse.exchangerates.EcbZipRateSourceTest
+ * </pre>
+ */
+public class EcbZipRateSourceTest
+{
+    private static final long TIMEOUT_MILLIS = 10000;
+    private static final String[] CURRENCIES = {"USD", "JPY", "GBP"};
+
+    public static void main(String[] args) throws Exception
+    {
+        Path directory = Files.createTempDirectory("zip-source-test");
+        int cases = 0;
+
+        try {
+            long[] cells = new long[1];
+            Throwable error = read(zip(directory, 2000, -1, null), (date, currency, rate) -> cells[0]++);
+            check(error == null && cells[0] == 2000 * (CURRENCIES.length + 1), "valid history", error);
+            cases++;
+
+            // the parser fills the queue while the handler is still slow, then hits the impossible date
+            for (int badRow : new int[]{0, 1, 600, 1999}) {
+                error = read(zip(directory, 2000, badRow, "2024-13-40"), (date, currency, rate) -> Thread.yield());
+                check(
+                    error instanceof IOException && error.getCause() instanceof DateTimeException,
+                    "impossible date in row " + badRow, error
+                );
+                cases++;
+            }
+
+            error = read(zip(directory, 2000, 700, "24-01-01"), (date, currency, rate) -> {
+            });
+            check(error instanceof IOException, "malformed date column", error);
+            cases++;
+
+            // the reader stops while the parser waits on a full queue
+            error = read(zip(directory, 2000, -1, null), (date, currency, rate) -> {
+                if (date.isBefore(LocalDate.of(2020, 1, 1))) {
+                    throw new SQLException("Handler failed");
+                }
+            });
+            check(error instanceof SQLException, "failing handler", error);
+            cases++;
+        } finally {
+            try (java.util.stream.Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(java.util.Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+
+        System.out.println("OK " + cases + " cases");
+    }
+
+    /**
+     * Reads the ZIP on its own thread and returns what it threw, or null. A read that does not end in time fails the test.
+     */
+    private static Throwable read(Path zip, RateHandler handler) throws InterruptedException
+    {
+        Throwable[] error = new Throwable[1];
+        Thread reader = new Thread(() -> {
+            try {
+                new EcbZipRateSource(zip.toUri().toString()).read(handler);
+            } catch (Throwable e) {
+                error[0] = e;
+            }
+        }, "zip-source-test");
+        reader.setDaemon(true);
+        reader.start();
+        reader.join(TIMEOUT_MILLIS);
+
+        if (reader.isAlive()) {
+            throw new AssertionError("Reading " + zip.getFileName() + " still blocks after " + TIMEOUT_MILLIS + " ms");
+        }
+        return error[0];
+    }
+
+    /**
+     * Writes a history of the given number of days, newest first like the ECB's, with the date of row
+     * badRow replaced by badDate when badRow is not negative.
+     */
+    private static Path zip(Path directory, int days, int badRow, String badDate) throws IOException
+    {
+        StringBuilder csv = new StringBuilder("Date");
+        for (String currency : CURRENCIES) {
+            csv.append(",");
+            csv.append(currency);
+        }
+        csv.append(",\n");
+
+        LocalDate date = LocalDate.of(2024, 6, 28);
+        for (int row = 0; row < days; row++, date = date.minusDays(1)) {
+            csv.append(row == badRow ? badDate : date.toString());
+            for (int i = 0; i < CURRENCIES.length; i++) {
+                csv.append(",");
+                csv.append(1 + i + row / 1e4);
+            }
+            csv.append(",\n");
+        }
+
+        Path zip = Files.createTempFile(directory, "history", ".zip");
+        try (ZipOutputStream outputStream = new ZipOutputStream(Files.newOutputStream(zip))) {
+            outputStream.putNextEntry(new ZipEntry("eurofxref-hist.csv"));
+            outputStream.write(csv.toString().getBytes(StandardCharsets.US_ASCII));
+            outputStream.closeEntry();
+        }
+        return zip;
+    }
+
+    private static void check(boolean passed, String what, Throwable error)
+    {
+        if (!passed) {
+            AssertionError failure = new AssertionError(what + ": ended with " + error);
+            if (error != null) {
+                failure.initCause(error);
+            }
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.techouse.exchangerates;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives FetchClient against a stub server that fails, stalls or holds its answer back: the number of
+ * attempts and the backoff between them, the read timeout, the sharing of a download that is still
+ * running but not of a finished one, and the stale copy served after the last attempt failed.
+ * Fails with an AssertionError naming the first wrong count, time or result.
+ * <pre>
+ * java -cp out:lib/* com.techouse.exchangerates.FetchClientTest
+ * </pre>
+ */
+public class FetchClientTest
+{
+    private static final int TIMEOUT = 5000;
+
+    // requests since the last reset, how many of them fail with a 500, and how the handler holds back;
+    // the handler runs on the server's threads
+    private static final AtomicInteger requests = new AtomicInteger();
+    private static volatile int failures = 0;
+    private static volatile long stallMillis = 0;
+    private static volatile CountDownLatch release = null;
+    private static int checks = 0;
+
+    public static void main(String[] args) throws Exception
+    {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        ExecutorService serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.createContext("/", FetchClientTest::handle);
+        server.start();
+        Path cacheDirectory = Files.createTempDirectory("fetch-client-test");
+
+        try {
+            String base = "http://localhost:" + server.getAddress().getPort();
+            retries(base, cacheDirectory);
+            timeout(base, cacheDirectory);
+            sharing(base, cacheDirectory);
+            staleCopy(base, cacheDirectory);
+        } finally {
+            server.stop(0);
+            serverThreads.shutdownNow();
+            try (java.util.stream.Stream<Path> paths = Files.walk(cacheDirectory)) {
+                paths.sorted(java.util.Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+
+        System.out.println("OK " + checks + " checks");
+    }
+
+    /**
+     * With 3 retries, 3 failures are overcome after backoffs of at least 0.5, 1 and 2 seconds, while a
+     * fourth failure gives up after exactly 4 requests.
+     */
+    private static void retries(String base, Path cacheDirectory) throws IOException
+    {
+        FetchClient client = new FetchClient(cacheDirectory, TIMEOUT, TIMEOUT, 3);
+
+        reset(3);
+        long start = System.nanoTime();
+        FetchClient.Result result = client.get(base + "/retry-recovers.xml");
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        check(requests.get() == 4, "3 failures and a success take 4 requests", requests.get());
+        check(!result.isStale() && read(result.getPath()).equals("rates"), "recovered download", result.getFailure());
+        check(elapsed >= 3500 && elapsed < 3500 * 5 / 4 + 2000, "backoff 0.5 + 1 + 2 s plus jitter", elapsed + " ms");
+
+        reset(4);
+        try {
+            client.get(base + "/retry-gives-up.xml");
+            check(false, "4 failures throw", null);
+        } catch (IOException e) {
+            check(e.getMessage().contains("500"), "4 failures throw the last error", e.getMessage());
+        }
+        check(requests.get() == 4, "3 retries make 4 requests", requests.get());
+
+        reset(1);
+        try {
+            new FetchClient(cacheDirectory, TIMEOUT, TIMEOUT, 0).get(base + "/no-retries.xml");
+            check(false, "no retries, 1 failure throws", null);
+        } catch (IOException e) {
+            check(requests.get() == 1, "no retries make 1 request", requests.get());
+        }
+    }
+
+    /**
+     * A server that stalls past the read timeout fails the attempt after the timeout, not after the stall.
+     */
+    private static void timeout(String base, Path cacheDirectory)
+    {
+        FetchClient client = new FetchClient(cacheDirectory, TIMEOUT, 300, 0);
+
+        reset(0);
+        stallMillis = 3000;
+        long start = System.nanoTime();
+        try {
+            client.get(base + "/stalls.xml");
+            check(false, "stalled download throws", null);
+        } catch (IOException e) {
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            check(elapsed >= 300 && elapsed < 2000, "read timeout of 300 ms ends the attempt", elapsed + " ms");
+        } finally {
+            stallMillis = 0;
+        }
+    }
+
+    /**
+     * Callers arriving while a download runs share it, a call after it finished asks the server again.
+     */
+    private static void sharing(String base, Path cacheDirectory) throws Exception
+    {
+        FetchClient client = new FetchClient(cacheDirectory, TIMEOUT, TIMEOUT, 0);
+        String url = base + "/shared.xml";
+
+        reset(0);
+        release = new CountDownLatch(1);
+        List<CompletableFuture<FetchClient.Result>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(client.fetch(url));
+        }
+        release.countDown();
+        for (CompletableFuture<FetchClient.Result> future : futures) {
+            check(future == futures.get(0), "concurrent callers share one download", future);
+            check(read(future.get(TIMEOUT, TimeUnit.MILLISECONDS).getPath()).equals("rates"), "shared result", null);
+        }
+        check(requests.get() == 1, "8 concurrent callers make 1 request", requests.get());
+
+        release = null;
+        client.get(url);
+        check(requests.get() == 2, "a call after the download finished makes a new request", requests.get());
+    }
+
+    /**
+     * A failed download with a cached copy returns that copy marked stale with the failure.
+     */
+    private static void staleCopy(String base, Path cacheDirectory) throws IOException
+    {
+        FetchClient client = new FetchClient(cacheDirectory, TIMEOUT, TIMEOUT, 0);
+        String url = base + "/stale.xml";
+
+        reset(0);
+        FetchClient.Result fresh = client.get(url);
+        check(!fresh.isStale() && fresh.getFailure() == null, "fresh download is not stale", fresh.getFailure());
+
+        reset(1);
+        FetchClient.Result stale = client.get(url);
+        check(stale.isStale() && stale.getFailure().getMessage().contains("500"), "fallback is stale", stale.getFailure());
+        check(stale.getPath().equals(fresh.getPath()) && read(stale.getPath()).equals("rates"), "fallback is the cached copy", null);
+    }
+
+    private static void reset(int failures)
+    {
+        requests.set(0);
+        FetchClientTest.failures = failures;
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException
+    {
+        try {
+            int request = requests.incrementAndGet();
+            CountDownLatch latch = release;
+            if (latch != null) {
+                latch.await(TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            if (stallMillis > 0) {
+                Thread.sleep(stallMillis);
+            }
+            if (request <= failures) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+
+            byte[] content = "rates".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(content);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String read(Path path) throws IOException
+    {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    private static void check(boolean passed, String what, Object actual)
+    {
+        checks++;
+        if (!passed) {
+            throw new AssertionError(what + ": got " + actual);
+        }
+    }
+}
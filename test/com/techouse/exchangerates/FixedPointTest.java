@@ -0,0 +1,197 @@
+package com.techouse.exchangerates;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+/**
+ * Checks FixedPoint against BigDecimal, with the conversions around the point where a scaled long no
+ * longer fits into a double exactly, and the calculator's amount times rate against the BigDecimal
+ * CEILING path it replaced. Fails with an AssertionError naming the first wrong result.
+ * <pre>
+ * java -cp out:lib/* com.techouse.exchangerates.FixedPointTest
+ * </pre>
+ */
+public class FixedPointTest
+{
+    private static final RoundingMode[] ROUNDING_MODES = {
+        RoundingMode.UP, RoundingMode.DOWN, RoundingMode.CEILING, RoundingMode.FLOOR,
+        RoundingMode.HALF_UP, RoundingMode.HALF_DOWN, RoundingMode.HALF_EVEN
+    };
+    private static final Random random = new Random(42);
+    private static int checks = 0;
+
+    public static void main(String[] args)
+    {
+        toDoubleBoundaries();
+        valueOfBoundaries();
+        calculatorAmounts();
+        arithmetic();
+        overflow();
+
+        System.out.println("OK " + checks + " checks");
+    }
+
+    private static void toDoubleBoundaries()
+    {
+        long exact = 1L << 53;
+        long[] values = {
+            0, 1, -1, FixedPoint.ONE, exact - 1, exact, exact + 1, exact + 3, -exact - 1, 3 * exact + 1,
+            169268456198373200L, 999_999_999_999_999_999L, Long.MAX_VALUE, Long.MIN_VALUE + 1
+        };
+        for (long value : values) {
+            checkToDouble(value);
+        }
+        for (int i = 0; i < 200000; i++) {
+            checkToDouble(random.nextLong() >> random.nextInt(20));
+            checkToDouble(exact + random.nextInt(1 << 20) - (1 << 19));
+        }
+    }
+
+    private static void checkToDouble(long value)
+    {
+        double expected = BigDecimal.valueOf(value, FixedPoint.SCALE).doubleValue();
+        check(Double.compare(FixedPoint.toDouble(value), expected) == 0, "toDouble(" + value + ")", FixedPoint.toDouble(value), expected);
+    }
+
+    private static void valueOfBoundaries()
+    {
+        String[] decimals = {
+            "0", "0.000001", "1.5", "-1.5", "999999999.999999", "1000000000", "1000000000.000001",
+            "9007199254.740991", "9007199254.740993", "12345678901.234567", "857124044.34569",
+            "123456789012.5", "-98765432109.87654", "9223372036854.77"
+        };
+        for (String decimal : decimals) {
+            checkValueOf(Double.parseDouble(decimal));
+        }
+        for (int i = 0; i < 200000; i++) {
+            int digits = random.nextInt(7);
+            double value = BigDecimal.valueOf(random.nextLong() % 10_000_000_000_000_000L, digits + 3).doubleValue();
+            if (Math.abs(value) < 9.2e12) {
+                checkValueOf(value);
+            }
+        }
+    }
+
+    /**
+     * A double is what the calculator hands over, so the expected decimal is the one its Double.toString names.
+     */
+    private static void checkValueOf(double value)
+    {
+        long expected = new BigDecimal(Double.toString(value)).setScale(FixedPoint.SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        check(FixedPoint.valueOf(value) == expected, "valueOf(" + value + ")", FixedPoint.valueOf(value), expected);
+    }
+
+    /**
+     * ExchangeRatesTable multiplied every rate by the amount entered as
+     * new BigDecimal(rate).multiply(new BigDecimal(amount)).setScale(4, CEILING).doubleValue().
+     */
+    private static void calculatorAmounts()
+    {
+        checkAmount(857124044.34569, 197.4842);
+        checkAmount(9007199254.74099, 1.2345);
+        checkAmount(1e12, 14110.17);
+
+        double[] magnitudes = {1, 1e3, 1e6, 1e9, 1e10, 1e11};
+        for (double magnitude : magnitudes) {
+            for (int i = 0; i < 20000; i++) {
+                double amount = BigDecimal.valueOf((long) (random.nextDouble() * magnitude * 1e5), 5).doubleValue();
+                double rate = BigDecimal.valueOf(1 + random.nextInt(2_000_000_000), 4 + random.nextInt(3)).doubleValue();
+                checkAmount(amount, rate);
+            }
+        }
+    }
+
+    private static void checkAmount(double amount, double rate)
+    {
+        double expected = new BigDecimal(Double.toString(rate))
+            .multiply(new BigDecimal(Double.toString(amount)))
+            .setScale(4, RoundingMode.CEILING)
+            .doubleValue();
+        double actual;
+        try {
+            actual = FixedPoint.toDouble(FixedPoint.multiply(FixedPoint.valueOf(rate), FixedPoint.valueOf(amount), 4, RoundingMode.CEILING));
+        } catch (ArithmeticException e) {
+            // the table falls back to BigDecimal beyond the fixed-point range
+            return;
+        }
+        check(Double.compare(actual, expected) == 0, amount + " x " + rate, actual, expected);
+    }
+
+    private static void arithmetic()
+    {
+        for (int i = 0; i < 200000; i++) {
+            long a = random.nextLong() >> (24 + random.nextInt(30));
+            long b = random.nextLong() >> (24 + random.nextInt(30));
+            long c = (random.nextLong() >>> (24 + random.nextInt(30))) + 1;
+            int decimals = random.nextInt(FixedPoint.SCALE + 1);
+            RoundingMode roundingMode = ROUNDING_MODES[random.nextInt(ROUNDING_MODES.length)];
+
+            BigDecimal x = BigDecimal.valueOf(a, FixedPoint.SCALE);
+            BigDecimal y = BigDecimal.valueOf(b, FixedPoint.SCALE);
+            BigDecimal z = BigDecimal.valueOf(c, FixedPoint.SCALE);
+
+            checkArithmetic("round", () -> FixedPoint.round(a, decimals, roundingMode), x.setScale(decimals, roundingMode));
+            checkArithmetic("multiply", () -> FixedPoint.multiply(a, b, decimals, roundingMode), x.multiply(y).setScale(decimals, roundingMode));
+            checkArithmetic("divide", () -> FixedPoint.divide(a, c, decimals, roundingMode), x.divide(z, decimals, roundingMode));
+            checkArithmetic(
+                "multiplyDivide", () -> FixedPoint.multiplyDivide(a, b, c, decimals, roundingMode),
+                x.multiply(y).divide(z, decimals, roundingMode)
+            );
+        }
+    }
+
+    private interface Operation
+    {
+        long apply();
+    }
+
+    /**
+     * The operation must return the exact BigDecimal result, or throw when that does not fit the range.
+     */
+    private static void checkArithmetic(String name, Operation operation, BigDecimal expected)
+    {
+        BigDecimal scaled = expected.setScale(FixedPoint.SCALE);
+        boolean fits = scaled.unscaledValue().bitLength() < 64;
+        try {
+            long actual = operation.apply();
+            check(fits && actual == scaled.unscaledValue().longValue(), name, actual, scaled);
+        } catch (ArithmeticException e) {
+            check(!fits, name + " threw " + e.getMessage(), null, scaled);
+        }
+    }
+
+    private static void overflow()
+    {
+        long max = Long.MAX_VALUE;
+        expectOverflow(() -> FixedPoint.multiply(max, 2 * FixedPoint.ONE, 6, RoundingMode.HALF_UP));
+        expectOverflow(() -> FixedPoint.divide(max, FixedPoint.ONE / 2, 6, RoundingMode.HALF_UP));
+        expectOverflow(() -> FixedPoint.round(max, 0, RoundingMode.UP));
+        expectOverflow(() -> FixedPoint.valueOf(9223372036854.775));
+        expectOverflow(() -> FixedPoint.valueOf(1e13));
+        expectOverflow(() -> FixedPoint.valueOf(Double.NaN));
+    }
+
+    private static void expectOverflow(Operation operation)
+    {
+        try {
+            long result = operation.apply();
+            check(false, "expected an ArithmeticException", result, null);
+        } catch (ArithmeticException e) {
+            checks++;
+        }
+    }
+
+    private static void check(boolean passed, String what, Object actual, Object expected)
+    {
+        checks++;
+        if (!passed) {
+            StringBuilder message = new StringBuilder(what);
+            message.append(": got ");
+            message.append(actual);
+            message.append(", expected ");
+            message.append(expected);
+            throw new AssertionError(message.toString());
+        }
+    }
+}
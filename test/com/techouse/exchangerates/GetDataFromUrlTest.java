@@ -0,0 +1,147 @@
+package com.techouse.exchangerates;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Fetches from a stub server into a temporary cache directory: the first download, a 304 for the
+ * validators it stored, a changed resource, a gzip encoded one, and a failing server with and without
+ * a cached copy to fall back to. Fails with an AssertionError naming the first wrong request or body.
+ * <pre>
+ * java -cp out:lib/* com.techouse.exchangerates.GetDataFromUrlTest
+ * </pre>
+ */
+public class GetDataFromUrlTest
+{
+    private static final String LAST_MODIFIED = "Fri, 28 Jun 2024 14:05:00 GMT";
+    private static final int TIMEOUT = 5000;
+
+    // what the stub serves and what it was last sent, the handler runs on the server's thread
+    private static volatile String etag = "\"v1\"";
+    private static volatile String body = "one";
+    private static volatile int failStatus = 0;
+    private static volatile String ifNoneMatch;
+    private static volatile String ifModifiedSince;
+    private static volatile int lastStatus;
+    private static int checks = 0;
+
+    public static void main(String[] args) throws Exception
+    {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", GetDataFromUrlTest::handle);
+        server.start();
+        Path cacheDirectory = Files.createTempDirectory("http-cache-test");
+
+        try {
+            String base = "http://localhost:" + server.getAddress().getPort();
+            URL url = new URL(base + "/eurofxref-daily.xml");
+
+            Path copy = GetDataFromUrl.fetch(url, cacheDirectory, TIMEOUT, TIMEOUT);
+            check(ifNoneMatch == null && ifModifiedSince == null, "first request sends no validators", ifNoneMatch);
+            check(lastStatus == 200 && read(copy).equals("one"), "first download", read(copy));
+            check(copy.startsWith(cacheDirectory), "copy kept in the given directory", copy);
+
+            copy = GetDataFromUrl.fetch(url, cacheDirectory, TIMEOUT, TIMEOUT);
+            check("\"v1\"".equals(ifNoneMatch), "If-None-Match", ifNoneMatch);
+            check(LAST_MODIFIED.equals(ifModifiedSince), "If-Modified-Since", ifModifiedSince);
+            check(lastStatus == 304 && read(copy).equals("one"), "304 serves the cached body", read(copy));
+
+            etag = "\"v2\"";
+            body = "two";
+            copy = GetDataFromUrl.fetch(url, cacheDirectory, TIMEOUT, TIMEOUT);
+            check(lastStatus == 200 && read(copy).equals("two"), "changed resource is downloaded again", read(copy));
+            GetDataFromUrl.fetch(url, cacheDirectory, TIMEOUT, TIMEOUT);
+            check("\"v2\"".equals(ifNoneMatch) && lastStatus == 304, "new validators are stored", ifNoneMatch);
+
+            copy = GetDataFromUrl.fetch(new URL(base + "/gzip/eurofxref-hist-90d.xml"), cacheDirectory, TIMEOUT, TIMEOUT);
+            check(read(copy).equals("two"), "gzip body is stored decoded", read(copy));
+
+            failStatus = 500;
+            try {
+                GetDataFromUrl.fetch(url, cacheDirectory, TIMEOUT, TIMEOUT);
+                check(false, "HTTP 500 throws", null);
+            } catch (IOException e) {
+                check(e.getMessage().contains("500"), "HTTP 500 throws", e.getMessage());
+            }
+
+            FetchClient client = new FetchClient(cacheDirectory, TIMEOUT, TIMEOUT, 0);
+            FetchClient.Result result = client.get(url.toString());
+            check(read(result.getPath()).equals("two"), "failed download falls back to the cached copy", read(result.getPath()));
+            check(result.isStale() && result.getFailure().getMessage().contains("500"), "fallback is reported stale", result.getFailure());
+            try {
+                client.get(base + "/never-fetched.xml");
+                check(false, "failed download without a cached copy throws", null);
+            } catch (IOException e) {
+                check(true, "failed download without a cached copy throws", e);
+            }
+        } finally {
+            server.stop(0);
+            try (java.util.stream.Stream<Path> paths = Files.walk(cacheDirectory)) {
+                paths.sorted(java.util.Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+
+        System.out.println("OK " + checks + " checks");
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException
+    {
+        ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+
+        try {
+            if (failStatus != 0) {
+                lastStatus = failStatus;
+                exchange.sendResponseHeaders(failStatus, -1);
+                return;
+            }
+            if (etag.equals(ifNoneMatch)) {
+                lastStatus = 304;
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            byte[] content = body.getBytes(StandardCharsets.UTF_8);
+            if (exchange.getRequestURI().getPath().startsWith("/gzip/")) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (GZIPOutputStream outputStream = new GZIPOutputStream(compressed)) {
+                    outputStream.write(content);
+                }
+                content = compressed.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+            lastStatus = 200;
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(content);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String read(Path path) throws IOException
+    {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    private static void check(boolean passed, String what, Object actual)
+    {
+        checks++;
+        if (!passed) {
+            throw new AssertionError(what + ": got " + actual);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.techouse.exchangerates;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+/**
+ * Runs EXPLAIN PLAN FOR over the statements the app sends to the rates table, on a file database
+ * migrated by SchemaMigrations, and checks that each one still reads through the index it was planned
+ * for, as a range where it has a condition and without a sort where it is ordered. Fails with an
+ * AssertionError showing the plan of the first statement that changed.
+ * <pre>
+ * java -cp out:lib/* com.techouse.exchangerates.QueryPlanTest
+ * </pre>
+ */
+public class QueryPlanTest
+{
+    private static final String TABLE_NAME = HistoricReferenceRates.TABLE_NAME;
+    // HSQLDB names the primary key index SYS_IDX_SYS_PK_<table id>_<constraint id>
+    private static final String PRIMARY_KEY = "SYS_IDX_SYS_PK_";
+    private static final String CURRENCY_DATE = "RATES_CURRENCY_DATE";
+    private static final String[] CURRENCIES = {
+        "AUD", "CAD", "CHF", "CNY", "GBP", "JPY", "NOK", "SEK", "USD", "ZAR"
+    };
+
+    public static void main(String[] args) throws Exception
+    {
+        Path directory = Files.createTempDirectory("query-plan-test");
+        int plans = 0;
+
+        try {
+            JDBCDataSource dataSource = new JDBCDataSource();
+            dataSource.setURL("jdbc:hsqldb:file:" + directory.resolve("plans"));
+            dataSource.setUser("SA");
+            dataSource.setPassword("");
+
+            try (Connection connection = dataSource.getConnection()) {
+                fill(connection);
+
+                // HistoricReferenceRates, before every ingest and on every pooled MAX(date) lookup
+                check(connection, "SELECT MAX(date) AS max_date FROM " + TABLE_NAME, PRIMARY_KEY, "INDEX PRED", false);
+                plans++;
+
+                // RateMatrix.load, whenever the matrix is reloaded after a sync
+                check(connection, "SELECT DISTINCT currency FROM " + TABLE_NAME + " ORDER BY currency ASC", CURRENCY_DATE, "FULL SCAN", true);
+                check(connection, "SELECT COUNT(DISTINCT date) AS num_days FROM " + TABLE_NAME, PRIMARY_KEY, "FULL SCAN", false);
+                check(connection, "SELECT date, currency, value FROM " + TABLE_NAME + " ORDER BY date ASC", PRIMARY_KEY, "FULL SCAN", true);
+                plans += 3;
+
+                // HistoricReferenceRates.deleteAfter, when an ingest is cancelled
+                check(connection, "DELETE FROM " + TABLE_NAME + " WHERE date > ?", PRIMARY_KEY, "INDEX PRED", false);
+                plans++;
+
+                // RateBatchWriter in merge mode, once per cell of every sync after the first
+                check(connection, RateBatchWriter.buildSql(TABLE_NAME, true), PRIMARY_KEY, "INDEX PRED", false);
+                plans++;
+
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SHUTDOWN");
+                }
+            }
+        } finally {
+            delete(directory);
+        }
+
+        System.out.println("OK " + plans + " query plans");
+    }
+
+    /**
+     * The plan must read the rates table through an index whose name starts with index, with the given
+     * access, and for an ordered statement must take the order from that index.
+     */
+    private static void check(Connection connection, String sql, String index, String access, boolean ordered) throws SQLException
+    {
+        String plan = explain(connection, sql);
+
+        // a statement with a subquery lists its range variables in turn, only the rates table matters
+        int table = plan.indexOf("table=" + TABLE_NAME + "\n");
+        int accessAt = table < 0 ? -1 : plan.indexOf("access=", table);
+        int indexAt = table < 0 ? -1 : plan.indexOf("index=", table);
+
+        boolean passed = accessAt >= 0 && indexAt >= 0
+            && plan.startsWith(access, accessAt + "access=".length())
+            && plan.startsWith(index, indexAt + "index=".length())
+            && (!ordered || plan.contains("uses index"));
+
+        if (!passed) {
+            StringBuilder message = new StringBuilder(sql);
+            message.append("\nexpected ");
+            message.append(access);
+            message.append(" on ");
+            message.append(index);
+            if (ordered) {
+                message.append(" without a sort");
+            }
+            message.append(", got:\n");
+            message.append(plan);
+            throw new AssertionError(message.toString());
+        }
+    }
+
+    private static String explain(Connection connection, String sql) throws SQLException
+    {
+        StringBuilder plan = new StringBuilder();
+
+        try (
+            Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery("EXPLAIN PLAN FOR " + sql)
+        ) {
+            while (resultSet.next()) {
+                plan.append(resultSet.getString(1));
+                plan.append('\n');
+            }
+        }
+
+        return plan.toString();
+    }
+
+    /**
+     * Migrates the schema and writes a few years of rates, so the plans are those of a populated table.
+     */
+    private static void fill(Connection connection) throws SQLException
+    {
+        SchemaMigrations.migrate(connection);
+
+        try (RateBatchWriter writer = new RateBatchWriter(
+            connection, TABLE_NAME, false,
+            RateBatchWriter.DEFAULT_BATCH_SIZE, RateBatchWriter.DEFAULT_COMMIT_INTERVAL
+        )) {
+            LocalDate date = LocalDate.of(2012, 1, 2);
+            for (int day = 0; day < 2000; day++, date = date.plusDays(1)) {
+                for (int i = 0; i < CURRENCIES.length; i++) {
+                    writer.write(date, CURRENCIES[i], 1 + i + day / 1e4);
+                }
+            }
+        }
+        connection.setAutoCommit(true);
+    }
+
+    private static void delete(Path directory) throws IOException
+    {
+        try (java.util.stream.Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(java.util.Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
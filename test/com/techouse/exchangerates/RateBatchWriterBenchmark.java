@@ -0,0 +1,174 @@
+package com.techouse.exchangerates;
+
+import org.hsqldb.jdbc.JDBCDataSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+/**
+ * Compares the ingest paths on a fresh file database each: the original per-row dupe check plus
+ * INSERT, the batched MERGE used when the table already has rows, and the batched INSERT of a cold
+ * start. All three must leave the same table behind.
+ * <pre>
+ * java -cp out:lib/* com.techouse.exchangerates.RateBatchWriterBenchmark [ROWS]
+ * </pre>
+ */
+public class RateBatchWriterBenchmark
+{
+    private static final String[] CURRENCIES = {
+        "AUD", "BGN", "BRL", "CAD", "CHF", "CNY", "CZK", "DKK", "GBP", "HKD", "HRK", "HUF", "IDR", "ILS",
+        "INR", "ISK", "JPY", "KRW", "MXN", "MYR", "NOK", "NZD", "PHP", "PLN", "RON", "RUB", "SEK", "SGD",
+        "THB", "TRY", "USD", "ZAR"
+    };
+
+    public static void main(String[] args) throws Exception
+    {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 273000;
+        int days = rows / CURRENCIES.length;
+
+        StringBuilder header = new StringBuilder("Ingesting ");
+        header.append(days * CURRENCIES.length);
+        header.append(" cells, ");
+        header.append(days);
+        header.append(" days x ");
+        header.append(CURRENCIES.length);
+        header.append(" currencies");
+        System.out.println(header.toString());
+
+        String perRow = run("per-row dupe check + insert", days, 0);
+        String merge = run("batched MERGE", days, 1);
+        String insert = run("batched INSERT (cold start)", days, 2);
+
+        if (!perRow.equals(merge) || !perRow.equals(insert)) {
+            throw new AssertionError("Table contents differ: " + perRow + " / " + merge + " / " + insert);
+        }
+        System.out.println("All paths wrote the same table: " + perRow);
+    }
+
+    private static String run(String name, int days, int mode) throws Exception
+    {
+        Path directory = Files.createTempDirectory("ingest-benchmark");
+        JDBCDataSource dataSource = new JDBCDataSource();
+        dataSource.setURL("jdbc:hsqldb:file:" + directory.resolve("bench") + ";shutdown=true");
+        dataSource.setUser("SA");
+        dataSource.setPassword("");
+
+        try (Connection connection = dataSource.getConnection()) {
+            SchemaMigrations.migrate(connection);
+
+            long start = System.nanoTime();
+            if (mode == 0) {
+                writePerRow(connection, days);
+            } else {
+                try (RateBatchWriter writer = new RateBatchWriter(
+                    connection, HistoricReferenceRates.TABLE_NAME, mode == 1,
+                    RateBatchWriter.DEFAULT_BATCH_SIZE, RateBatchWriter.DEFAULT_COMMIT_INTERVAL
+                )) {
+                    LocalDate date = firstDay();
+                    for (int day = 0; day < days; day++, date = nextWeekday(date)) {
+                        for (int i = 0; i < CURRENCIES.length; i++) {
+                            writer.write(date, CURRENCIES[i], rate(day, i));
+                        }
+                    }
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.println(String.format(
+                "%-30s %6.1f s  %8.0f rows/s", name, seconds, days * CURRENCIES.length / seconds
+            ));
+
+            return checksum(connection);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    /**
+     * The ingest as it was before RateBatchWriter: one SELECT and one INSERT round trip per cell.
+     */
+    private static void writePerRow(Connection connection, int days) throws SQLException
+    {
+        connection.setAutoCommit(false);
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ");
+        sql.append(HistoricReferenceRates.TABLE_NAME);
+        sql.append(" (date, currency, value) VALUES (?, ?, ?)");
+
+        StringBuilder dupeCheckSql = new StringBuilder("SELECT 1 AS entry_exists FROM ");
+        dupeCheckSql.append(HistoricReferenceRates.TABLE_NAME);
+        dupeCheckSql.append(" WHERE date = ? AND currency = ?");
+
+        try (
+            PreparedStatement insert = connection.prepareStatement(sql.toString());
+            PreparedStatement select = connection.prepareStatement(dupeCheckSql.toString())
+        ) {
+            LocalDate date = firstDay();
+            for (int day = 0; day < days; day++, date = nextWeekday(date)) {
+                Date sqlDate = Date.valueOf(date);
+                for (int i = 0; i < CURRENCIES.length; i++) {
+                    select.setDate(1, sqlDate);
+                    select.setString(2, CURRENCIES[i]);
+                    try (ResultSet dupeCheckResult = select.executeQuery()) {
+                        if (!dupeCheckResult.isBeforeFirst()) {
+                            insert.setDate(1, sqlDate);
+                            insert.setString(2, CURRENCIES[i]);
+                            insert.setDouble(3, rate(day, i));
+                            insert.executeUpdate();
+                        }
+                    }
+                }
+            }
+            connection.commit();
+        }
+    }
+
+    private static String checksum(Connection connection) throws SQLException
+    {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*), MIN(date), MAX(date), SUM(value) FROM ");
+        sql.append(HistoricReferenceRates.TABLE_NAME);
+
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(sql.toString())) {
+            resultSet.next();
+            StringBuilder checksum = new StringBuilder();
+            checksum.append(resultSet.getLong(1));
+            checksum.append(" rows ");
+            checksum.append(resultSet.getDate(2));
+            checksum.append("..");
+            checksum.append(resultSet.getDate(3));
+            checksum.append(" sum ");
+            checksum.append(String.format("%.4f", resultSet.getDouble(4)));
+            return checksum.toString();
+        }
+    }
+
+    private static LocalDate firstDay()
+    {
+        return LocalDate.of(1999, 1, 4);
+    }
+
+    private static LocalDate nextWeekday(LocalDate date)
+    {
+        LocalDate next = date.plusDays(1);
+        while (next.getDayOfWeek() == DayOfWeek.SATURDAY || next.getDayOfWeek() == DayOfWeek.SUNDAY) {
+            next = next.plusDays(1);
+        }
+        return next;
+    }
+
+    private static double rate(int day, int currency)
+    {
+        return Math.round((1 + currency + Math.sin(day / 50d + currency)) * 1e4) / 1e4;
+    }
+
+    private static void delete(Path directory) throws IOException
+    {
+        try (java.util.stream.Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(java.util.Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
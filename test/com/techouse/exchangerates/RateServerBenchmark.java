@@ -0,0 +1,158 @@
+package com.techouse.exchangerates;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Load test of the JSON service: keep-alive HttpURLConnection clients request a mix of historic days
+ * with a base, pair histories and the latest rates for a fixed time at each concurrency level, and the
+ * throughput and the median and 99th percentile latency are reported per level. Without a URL it starts
+ * a RateServer in this JVM on the rates of the local database, otherwise it loads the server at that
+ * URL, such as one started with the serve command.
+ * <pre>
+ * java -cp out:lib/* com.techouse.exchangerates.RateServerBenchmark [SECONDS] [URL]
+ * </pre>
+ */
+public class RateServerBenchmark
+{
+    private static final int[] CONCURRENCY = {1, 8, 32, 128};
+    // quoted on every day since 1999, so every historic request finds its base
+    private static final String[] BASES = {"USD", "GBP", "JPY", "CHF", "SEK", "DKK", "NOK", "AUD", "CAD"};
+
+    public static void main(String[] args) throws Exception
+    {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String url = args.length > 1 ? args[1] : null;
+        RateServer server = null;
+
+        if (url == null) {
+            HistoricReferenceRates.awaitIngest();
+            ReferenceRates.getSnapshot();
+            server = new RateServer(0);
+            server.start();
+            url = "http://localhost:" + server.getPort();
+        }
+
+        String[] paths = getPaths();
+        try {
+            for (int concurrency : CONCURRENCY) {
+                run(url, paths, concurrency, seconds);
+            }
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Three historic days for every pair history and every latest request, spread over the whole history.
+     * Latest requests only ask for a base the local daily rates quote, without them only the euro is known.
+     */
+    private static String[] getPaths()
+    {
+        List<String> paths = new ArrayList<>();
+        RateSnapshot latest = ReferenceRates.getLocalSnapshot();
+        LocalDate day = LocalDate.of(2000, 1, 3);
+
+        for (int i = 0; i < 64; i++, day = day.plusDays(97)) {
+            String base = BASES[i % BASES.length];
+
+            StringBuilder path = new StringBuilder("/rates/");
+            path.append(day);
+            path.append("?base=");
+            path.append(base);
+            paths.add(path.toString());
+
+            if (i % 3 == 0) {
+                path = new StringBuilder("/history?currency=");
+                path.append(BASES[(i + 1) % BASES.length]);
+                path.append("&base=");
+                path.append(base);
+                path.append("&from=");
+                path.append(day);
+                path.append("&to=");
+                path.append(day.plusYears(1));
+                paths.add(path.toString());
+
+                paths.add(latest.indexOf(base) >= 0 ? "/rates/latest?base=" + base : "/rates/latest");
+            }
+        }
+
+        return paths.toArray(new String[paths.size()]);
+    }
+
+    private static void run(String url, String[] paths, int concurrency, int seconds) throws InterruptedException
+    {
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        long[][] latencies = new long[concurrency][];
+        int[] errors = new int[concurrency];
+        Thread[] clients = new Thread[concurrency];
+
+        for (int client = 0; client < concurrency; client++) {
+            final int id = client;
+            clients[client] = new Thread(() -> {
+                long[] latency = new long[1 << 16];
+                byte[] buffer = new byte[1 << 16];
+                int count = 0;
+
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    if (!get(url + paths[(id * 7 + count) % paths.length], buffer)) {
+                        errors[id]++;
+                    }
+                    if (count == latency.length) {
+                        latency = Arrays.copyOf(latency, 2 * count);
+                    }
+                    latency[count++] = System.nanoTime() - start;
+                }
+                latencies[id] = Arrays.copyOf(latency, count);
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread client : clients) {
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        int failed = Arrays.stream(errors).sum();
+        System.out.println(String.format(
+            "concurrency %3d: %7.0f req/s  p50 %7.2f ms  p99 %7.2f ms  %d requests, %d failed",
+            concurrency, all.length / elapsed, all[all.length / 2] / 1e6, all[(int) (all.length * 0.99)] / 1e6,
+            all.length, failed
+        ));
+    }
+
+    /**
+     * Reads the whole response, so the connection goes back to the keep-alive cache, and tells whether it was a 200.
+     */
+    private static boolean get(String url, byte[] buffer)
+    {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    while (in.read(buffer) >= 0) {
+                        // drain
+                    }
+                }
+            }
+            return status == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
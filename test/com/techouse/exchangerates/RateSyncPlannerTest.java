@@ -0,0 +1,145 @@
+package com.techouse.exchangerates;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.TreeSet;
+
+/**
+ * Syncs from stub sources that publish every weekday newest first and can fail after a number of days,
+ * as a download that breaks off does. A sync that returns must have handed over every missing day, one
+ * that could not must throw, so HistoricReferenceRates discards what was handed over. Fails with an
+ * AssertionError naming the first case that ended wrongly.
+ * <pre>
+ * java -cp out:lib/* com.techouse.exchangerates.RateSyncPlannerTest
+ * </pre>
+ */
+public class RateSyncPlannerTest
+{
+    private static final LocalDate TODAY = LocalDate.of(2024, 6, 28);
+    private static final LocalDate FIRST_DAY = LocalDate.of(1999, 1, 4);
+    private static int cases = 0;
+
+    public static void main(String[] args) throws Exception
+    {
+        // cold start, only the history is planned and it breaks off
+        check("cold start, history fails halfway", null, null, null, new StubSource(FIRST_DAY, 3000), false);
+        check("cold start", null, null, null, new StubSource(FIRST_DAY, -1), true);
+
+        // about a month behind: the 90 day feed is tried first, then the history
+        LocalDate monthAgo = TODAY.minusDays(30);
+        check(
+            "90 days fail halfway, history complete", monthAgo,
+            null, new StubSource(TODAY.minusDays(90), 5), new StubSource(FIRST_DAY, -1), true
+        );
+        check(
+            "90 days and history fail halfway", monthAgo,
+            null, new StubSource(TODAY.minusDays(90), 5), new StubSource(FIRST_DAY, 10), false
+        );
+        check(
+            "90 days fail at once, history fails halfway", monthAgo,
+            null, new StubSource(TODAY.minusDays(90), 0), new StubSource(FIRST_DAY, 12), false
+        );
+
+        // one day behind: the daily feed is enough
+        LocalDate yesterday = TODAY.minusDays(1);
+        check(
+            "daily complete", yesterday,
+            new StubSource(TODAY, -1), new StubSource(TODAY.minusDays(90), -1), new StubSource(FIRST_DAY, -1), true
+        );
+        check(
+            "daily fails, 90 days complete", yesterday,
+            new StubSource(TODAY, 0), new StubSource(TODAY.minusDays(90), -1), new StubSource(FIRST_DAY, 0), true
+        );
+
+        // every source completes, but none reaches back to the first missing day
+        check(
+            "no source reaches back", monthAgo,
+            null, new StubSource(TODAY.minusDays(10), -1), new StubSource(TODAY.minusDays(10), -1), false
+        );
+
+        System.out.println("OK " + cases + " cases");
+    }
+
+    /**
+     * Runs one sync after maxDate and checks that it covered every weekday up to today when it returned,
+     * and that it threw when it could not.
+     */
+    private static void check(
+        String name, LocalDate maxDate, RateSource daily, RateSource ninetyDays, RateSource history, boolean covered
+    ) throws SQLException
+    {
+        RateSource none = handler -> {
+            throw new AssertionError(name + ": read a source that was not planned");
+        };
+        RateSyncPlanner planner = new RateSyncPlanner(
+            daily == null ? none : daily, ninetyDays == null ? none : ninetyDays, history
+        );
+        TreeSet<LocalDate> handed = new TreeSet<>();
+        IOException failure = null;
+
+        try {
+            planner.sync(maxDate, TODAY, (date, currency, rate) -> {
+                if (maxDate != null && !date.isAfter(maxDate)) {
+                    throw new AssertionError(name + ": handed over " + date + ", not after " + maxDate);
+                }
+                handed.add(date);
+            });
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        if (covered) {
+            if (failure != null) {
+                throw new AssertionError(name + ": threw " + failure);
+            }
+            LocalDate day = maxDate == null ? FIRST_DAY : maxDate.plusDays(1);
+            for (; !day.isAfter(TODAY); day = day.plusDays(1)) {
+                if (isWeekday(day) && !handed.contains(day)) {
+                    throw new AssertionError(name + ": returned without " + day);
+                }
+            }
+        } else if (failure == null) {
+            throw new AssertionError(name + ": returned, but only reached back to " + (handed.isEmpty() ? null : handed.first()));
+        }
+        cases++;
+    }
+
+    private static boolean isWeekday(LocalDate day)
+    {
+        return day.getDayOfWeek() != DayOfWeek.SATURDAY && day.getDayOfWeek() != DayOfWeek.SUNDAY;
+    }
+
+    /**
+     * Publishes every weekday from today back to firstDay, newest first, and throws an IOException after
+     * failAfter days unless that is negative.
+     */
+    private static class StubSource implements RateSource
+    {
+        private final LocalDate firstDay;
+        private final int failAfter;
+
+        StubSource(LocalDate firstDay, int failAfter)
+        {
+            this.firstDay = firstDay;
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public void read(RateHandler handler) throws IOException, SQLException
+        {
+            int days = 0;
+            for (LocalDate day = TODAY; !day.isBefore(firstDay); day = day.minusDays(1)) {
+                if (!isWeekday(day)) {
+                    continue;
+                }
+                if (days++ == failAfter) {
+                    throw new IOException("Connection reset after " + failAfter + " days");
+                }
+                handler.handle(day, "USD", 1.1);
+                handler.handle(day, "JPY", 170.5);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.techouse.exchangerates;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Times the DOM walk the feeds used to be read with against RateXmlReader, on generated feeds shaped
+ * like the ECB daily, 90 day and full history XML. Both must see the same cells.
+ * <pre>
+ * java -cp out:lib/* com.techouse.exchangerates.RateXmlReaderBenchmark
+ * </pre>
+ */
+public class RateXmlReaderBenchmark
+{
+    private static final String[] CURRENCIES = {
+        "USD", "JPY", "BGN", "CZK", "DKK", "GBP", "HUF", "PLN", "RON", "SEK", "CHF", "ISK", "NOK", "TRY",
+        "AUD", "BRL", "CAD", "CNY", "HKD", "IDR", "ILS", "INR", "KRW", "MXN", "MYR", "NZD", "PHP", "SGD",
+        "THB", "ZAR"
+    };
+    private static final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    public static void main(String[] args) throws Exception
+    {
+        run("daily", feed(1), 2000);
+        run("90 days", feed(64), 200);
+        run("full history", feed(7250), 10);
+    }
+
+    private static void run(String name, byte[] feed, int iterations) throws Exception
+    {
+        double[] domChecksum = new double[1];
+        double[] staxChecksum = new double[1];
+
+        // warm up both paths before timing them
+        for (int i = 0; i < iterations; i++) {
+            domChecksum[0] = readDom(feed);
+            staxChecksum[0] = readStax(feed);
+        }
+        if (domChecksum[0] != staxChecksum[0]) {
+            throw new AssertionError(name + ": DOM read " + domChecksum[0] + ", StAX read " + staxChecksum[0]);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            readDom(feed);
+        }
+        double dom = (System.nanoTime() - start) / 1e6 / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            readStax(feed);
+        }
+        double stax = (System.nanoTime() - start) / 1e6 / iterations;
+
+        System.out.println(String.format(
+            "%-14s %8d bytes  DOM %9.3f ms  StAX %9.3f ms  %.1fx", name, feed.length, dom, stax, dom / stax
+        ));
+    }
+
+    /**
+     * The walk ReferenceRates did before RateXmlReader, returning the sum of all rates read.
+     */
+    private static double readDom(byte[] feed) throws Exception
+    {
+        DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
+        domFactory.setNamespaceAware(true);
+        NodeList nodeList = domFactory
+            .newDocumentBuilder()
+            .parse(new ByteArrayInputStream(feed))
+            .getElementsByTagName("Cube");
+
+        double checksum = 0;
+        for (int i = 0; i < nodeList.getLength(); i++) {
+            Node node = nodeList.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                Element element = (Element) node;
+                if (element.hasAttribute("time")) {
+                    LocalDate.parse(element.getAttribute("time"), dateFormat);
+                    checksum += 1d;
+                } else if (element.hasAttribute("currency") && element.hasAttribute("rate")) {
+                    checksum += Double.parseDouble(element.getAttribute("rate"));
+                }
+            }
+        }
+        return checksum;
+    }
+
+    private static double readStax(byte[] feed) throws Exception
+    {
+        double[] checksum = new double[1];
+        RateXmlReader.read(new ByteArrayInputStream(feed), (date, currency, rate) -> checksum[0] += rate);
+        return checksum[0];
+    }
+
+    private static byte[] feed(int days)
+    {
+        StringBuilder xml = new StringBuilder(days * CURRENCIES.length * 48);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<gesmes:Envelope xmlns:gesmes=\"http://www.gesmes.org/xml/2002-08-01\"");
+        xml.append(" xmlns=\"http://www.ecb.int/vocabulary/2002-08-01/eurofxref\">\n");
+        xml.append("\t<gesmes:subject>Reference rates</gesmes:subject>\n");
+        xml.append("\t<gesmes:Sender>\n\t\t<gesmes:name>European Central Bank</gesmes:name>\n\t</gesmes:Sender>\n");
+        xml.append("\t<Cube>\n");
+
+        LocalDate date = LocalDate.of(2017, 4, 13);
+        for (int day = 0; day < days; day++) {
+            xml.append("\t\t<Cube time=\"");
+            xml.append(date.format(dateFormat));
+            xml.append("\">\n");
+            for (int i = 0; i < CURRENCIES.length; i++) {
+                xml.append("\t\t\t<Cube currency=\"");
+                xml.append(CURRENCIES[i]);
+                xml.append("\" rate=\"");
+                xml.append(String.format("%.4f", 1 + i + Math.sin(day / 50d + i)));
+                xml.append("\"/>\n");
+            }
+            xml.append("\t\t</Cube>\n");
+
+            date = date.minusDays(1);
+            while (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                date = date.minusDays(1);
+            }
+        }
+
+        xml.append("\t</Cube>\n</gesmes:Envelope>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
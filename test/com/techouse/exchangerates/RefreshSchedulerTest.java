@@ -0,0 +1,123 @@
+package com.techouse.exchangerates;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Computes the refresh schedule with fixed clocks around a weekend, the TARGET holidays and the 16:00
+ * publication time on both sides of the spring and autumn clock changes, where 16:00 is 14:00 or 15:00
+ * UTC. Fails with an AssertionError naming the first wrong check time or due day.
+ * <pre>
+ * java -cp out:lib/* com.techouse.exchangerates.RefreshSchedulerTest
+ * </pre>
+ */
+public class RefreshSchedulerTest
+{
+    private static int checks = 0;
+
+    public static void main(String[] args)
+    {
+        dueDays();
+        nextChecks();
+        backoff();
+
+        System.out.println("OK " + checks + " checks");
+    }
+
+    private static void dueDays()
+    {
+        // Friday 28 June 2024, summer time
+        checkDueDay("2024-06-28T14:04:59Z", "2024-06-27");
+        checkDueDay("2024-06-28T14:05:00Z", "2024-06-28");
+        // the weekend and Monday morning still wait for Friday's rates
+        checkDueDay("2024-06-29T12:00:00Z", "2024-06-28");
+        checkDueDay("2024-07-01T14:04:59Z", "2024-06-28");
+
+        // Easter 2024: Good Friday 29 March, clocks go forward on Sunday 31 March, Easter Monday 1 April
+        checkDueDay("2024-03-28T15:05:00Z", "2024-03-28");
+        checkDueDay("2024-03-29T15:05:00Z", "2024-03-28");
+        checkDueDay("2024-04-01T14:05:00Z", "2024-03-28");
+        checkDueDay("2024-04-02T14:04:59Z", "2024-03-28");
+        checkDueDay("2024-04-02T14:05:00Z", "2024-04-02");
+
+        // clocks go back on Sunday 27 October 2024
+        checkDueDay("2024-10-25T14:05:00Z", "2024-10-25");
+        checkDueDay("2024-10-28T14:05:00Z", "2024-10-25");
+        checkDueDay("2024-10-28T15:04:59Z", "2024-10-25");
+        checkDueDay("2024-10-28T15:05:00Z", "2024-10-28");
+
+        // Christmas, Boxing Day and New Year's Day
+        checkDueDay("2024-12-27T15:04:59Z", "2024-12-24");
+        checkDueDay("2025-01-01T18:00:00Z", "2024-12-31");
+        checkDueDay("2025-01-02T15:05:00Z", "2025-01-02");
+    }
+
+    private static void nextChecks()
+    {
+        // rates current on Friday evening: nothing to do until Monday 16:05
+        checkNextCheck("2024-06-28T17:00:00Z", "2024-06-28", "2024-07-01T14:05:00Z");
+        checkNextCheck("2024-06-29T12:00:00Z", "2024-06-28", "2024-07-01T14:05:00Z");
+        // Friday afternoon with Thursday's rates: wait for 16:05, then poll at once
+        checkNextCheck("2024-06-28T13:00:00Z", "2024-06-27", "2024-06-28T14:05:00Z");
+        checkNextCheck("2024-06-28T14:05:00Z", "2024-06-27", "2024-06-28T14:05:00Z");
+
+        // Maundy Thursday: the next publication is the Tuesday after Easter, in summer time
+        checkNextCheck("2024-03-28T16:00:00Z", "2024-03-28", "2024-04-02T14:05:00Z");
+        // Friday before the clocks go back: Monday 16:05 is an hour later in UTC
+        checkNextCheck("2024-10-25T15:00:00Z", "2024-10-25", "2024-10-28T15:05:00Z");
+        // Christmas Eve: the next publication is 27 December
+        checkNextCheck("2024-12-24T16:00:00Z", "2024-12-24", "2024-12-27T15:05:00Z");
+
+        // nothing stored yet: poll at once
+        checkNextCheck("2024-06-29T12:00:00Z", null, "2024-06-29T12:00:00Z");
+    }
+
+    private static void backoff()
+    {
+        Instant now = Instant.parse("2024-06-28T15:00:00Z");
+        Instant lastPoll = Instant.parse("2024-06-28T14:58:00Z");
+        RefreshScheduler scheduler = newScheduler(now);
+        LocalDate behind = LocalDate.of(2024, 6, 27);
+
+        check(scheduler.getNextCheck(behind, lastPoll, 0), now, "no failed poll");
+        long[] minutes = {1, 2, 4, 8, 16, 30, 30};
+        for (int failedPolls = 1; failedPolls <= minutes.length; failedPolls++) {
+            check(
+                scheduler.getNextCheck(behind, lastPoll, failedPolls),
+                lastPoll.plus(Duration.ofMinutes(minutes[failedPolls - 1])),
+                failedPolls + " failed polls"
+            );
+        }
+        check(scheduler.getNextCheck(behind, lastPoll, 1000), lastPoll.plus(RefreshScheduler.MAX_BACKOFF), "1000 failed polls");
+    }
+
+    private static void checkDueDay(String now, String dueDay)
+    {
+        check(RefreshScheduler.getDueDay(Instant.parse(now)), LocalDate.parse(dueDay), "due day at " + now);
+    }
+
+    private static void checkNextCheck(String now, String latestDay, String nextCheck)
+    {
+        LocalDate latest = latestDay == null ? null : LocalDate.parse(latestDay);
+        check(
+            newScheduler(Instant.parse(now)).getNextCheck(latest, null, 0),
+            Instant.parse(nextCheck),
+            "next check at " + now + " with " + latestDay
+        );
+    }
+
+    private static RefreshScheduler newScheduler(Instant now)
+    {
+        return new RefreshScheduler(Clock.fixed(now, EcbCalendar.ZONE), () -> null, () -> null);
+    }
+
+    private static void check(Object actual, Object expected, String what)
+    {
+        checks++;
+        if (!expected.equals(actual)) {
+            throw new AssertionError(what + ": got " + actual + ", expected " + expected);
+        }
+    }
+}